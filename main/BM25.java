@@ -0,0 +1,67 @@
+package main;
+
+/**
+ * BM25 scoring function.
+ * <p>
+ * Contribution of a term to the score of a document is <code>idf * weight</code>, where
+ * <code>weight = tf * (k1 + 1) / (tf + k1 * (1 - b + b * dl / avgdl))</code> depends only on the posting,
+ * so weights can be computed when the index is built, and idf is known only from the whole posting list.
+ * dl is the number of words in the document and avgdl is the average number of words in a document.
+ */
+public class BM25 {
+
+    public static final float K1 = 1.2f;
+    public static final float B = 0.75f;
+    /** upper bound of weight of any posting, the limit of weight as tf grows */
+    public static final float MAX_WEIGHT = K1 + 1;
+
+    /** k1 * (1 - b + b * dl / avgdl) of each document */
+    private float[] lengthNorms;
+
+    /**
+     * @param docLengths number of words in each document
+     */
+    public BM25(int[] docLengths) {
+        long nWords = 0;
+        for (int length : docLengths) {
+            nWords += length;
+        }
+        double avgLength = (docLengths.length == 0) ? 0 : (double) nWords / docLengths.length;
+        this.lengthNorms = new float[docLengths.length];
+        for (int ID = 0; ID < docLengths.length; ID++) {
+            double relLength = (avgLength == 0) ? 1 : docLengths[ID] / avgLength;
+            lengthNorms[ID] = (float) (K1 * (1 - B + B * relLength));
+        }
+    }
+
+    /**
+     * @return number of documents in the collection
+     */
+    public int getnDocs() {
+        return lengthNorms.length;
+    }
+
+    /**
+     * @param docFrequency number of documents, which contain the term
+     * @return ln(1 + (N - df + 0.5) / (df + 0.5)), which is always positive
+     */
+    public float idf(int docFrequency) {
+        return (float) Math.log(1 + (lengthNorms.length - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    /**
+     * @param tf    frequency of the term in the document
+     * @param docID id of the document
+     * @return weight of the posting, which does not depend on the term
+     */
+    public float weight(int tf, int docID) {
+        return tf * MAX_WEIGHT / (tf + lengthNorms[docID]);
+    }
+
+    /**
+     * @return contribution of a term with the given idf and frequency to the score of the document
+     */
+    public float score(float idf, int tf, int docID) {
+        return idf * weight(tf, docID);
+    }
+}
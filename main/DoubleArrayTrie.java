@@ -0,0 +1,581 @@
+package main;
+
+import main.indexes.PositionalIndex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact trie, stored in two int arrays (<b>double-array trie</b>).
+ * Is built once from sorted words and does not change afterwards.
+ * <p>
+ * Every state of the trie is an index in the arrays. Chars are mapped to codes from 1 to the alphabet size
+ * (code 0 marks the end of a word), and a transition from state s by char with code c
+ * leads to state <code>t = base[s] + c</code>, which exists only if <code>check[t] == s</code>.
+ * A state, reached by code 0, stores the word's value as <code>base[t] = -(value + 1)</code>.
+ * <p>
+ * Has the same semantics as {@link Trie}: all operations are case insensitive,
+ * prefix search returns the prefix itself first (if it is a word) and then other words in sorted order.
+ *
+ * @see Trie
+ */
+public class DoubleArrayTrie implements Serializable {
+
+    private int[] base;
+    private int[] check;
+    /** sorted chars, which words consist of; char's code is its index + 1 */
+    private char[] alphabet;
+    private Trie.WordInfo[] wordInfos;
+    private int nWords;
+
+    /** limit of prefix search, which means all words should be returned */
+    public static final int NO_LIMIT = -1;
+
+    private static final int ROOT = 0;
+    private static final int END_OF_WORD = 0;
+    private static final int FREE = -1;
+    private static final int INITIAL_SIZE = 1024;
+    private static final int INITIAL_PATH_SIZE = 16;
+    /** share of taken positions, after which they are not scanned anymore while building */
+    private static final double DENSITY = 0.95;
+
+    /**
+     * Builds trie, in which value of each word is its index in the array
+     *
+     * @param words     unique words sorted alphabetically
+     * @param wordInfos info for each word
+     */
+    public DoubleArrayTrie(String[] words, Trie.WordInfo[] wordInfos) {
+        this(words, null, wordInfos);
+    }
+
+    /**
+     * Builds trie, which maps words to their values
+     *
+     * @param words     unique words sorted alphabetically
+     * @param values    value of each word (index in wordInfos), if null, index of the word is used
+     * @param wordInfos info for each value
+     */
+    public DoubleArrayTrie(String[] words, int[] values, Trie.WordInfo[] wordInfos) {
+        this.wordInfos = wordInfos;
+        this.nWords = words.length;
+        this.alphabet = buildAlphabet(words);
+        this.base = new int[INITIAL_SIZE];
+        this.check = new int[INITIAL_SIZE];
+        Arrays.fill(check, FREE);
+        check[ROOT] = ROOT;
+        Builder builder = new Builder(words, values);
+        if (nWords > 0) {
+            builder.insert(ROOT, 0, nWords, 0);
+        }
+        // cut arrays to the size
+        int size = builder.maxUsed + 1;
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+    }
+
+    private static char[] buildAlphabet(String[] words) {
+        boolean[] present = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        for (String word : words) {
+            for (int i = 0, len = word.length(); i < len; i++) {
+                char chr = word.charAt(i);
+                if (!present[chr]) {
+                    present[chr] = true;
+                    size++;
+                }
+            }
+        }
+        char[] chars = new char[size];
+        int index = 0;
+        for (int chr = 0; chr <= Character.MAX_VALUE; chr++) {
+            if (present[chr]) {
+                chars[index++] = (char) chr;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Fills base and check arrays, placing siblings one by one
+     */
+    private class Builder {
+        private String[] words;
+        private int[] values;
+        /** index to start searching for free positions from */
+        private int searchStart = 1;
+        private int maxUsed = ROOT;
+
+        private Builder(String[] words, int[] values) {
+            this.words = words;
+            this.values = values;
+        }
+
+        /**
+         * Places children of the state: codes of chars at specified depth of words from the range
+         *
+         * @param state state, which children are placed
+         * @param from  index of the first word with state's prefix
+         * @param to    index of the last word with state's prefix + 1
+         * @param depth length of state's prefix
+         */
+        private void insert(int state, int from, int to, int depth) {
+            // collect codes of children and the ranges of words after each of them
+            int[] codes = new int[Math.min(to - from, alphabet.length + 1)];
+            int[] starts = new int[codes.length + 1];
+            int nChildren = 0;
+            for (int i = from; i < to; i++) {
+                int code = (words[i].length() == depth) ? END_OF_WORD : code(words[i].charAt(depth));
+                if (nChildren == 0 || codes[nChildren - 1] != code) {
+                    codes[nChildren] = code;
+                    starts[nChildren] = i;
+                    nChildren++;
+                }
+            }
+            starts[nChildren] = to;
+
+            int stateBase = findBase(codes, nChildren);
+            base[state] = stateBase;
+            for (int i = 0; i < nChildren; i++) {
+                int child = stateBase + codes[i];
+                check[child] = state;
+                maxUsed = Math.max(maxUsed, child);
+            }
+            for (int i = 0; i < nChildren; i++) {
+                int child = stateBase + codes[i];
+                if (codes[i] == END_OF_WORD) {
+                    int index = starts[i];
+                    base[child] = -((values == null ? index : values[index]) + 1);
+                } else {
+                    insert(child, starts[i], starts[i + 1], depth + 1);
+                }
+            }
+        }
+
+        /**
+         * Finds base, for which all children positions are free.
+         * If almost all scanned positions are taken or do not fit, the search will start after them next time.
+         */
+        private int findBase(int[] codes, int nChildren) {
+            int start = Math.max(searchStart, codes[0] + 1);
+            int nTaken = 0;
+            for (int pos = start; ; pos++) {
+                ensureCapacity(pos + 1);
+                if (check[pos] != FREE) {
+                    nTaken++;
+                    continue;
+                }
+                int stateBase = pos - codes[0];
+                ensureCapacity(stateBase + codes[nChildren - 1] + 1);
+                boolean fits = true;
+                for (int i = 1; i < nChildren && fits; i++) {
+                    fits = check[stateBase + codes[i]] == FREE;
+                }
+                if (fits) {
+                    if (nTaken >= DENSITY * (pos - start + 1)) {
+                        searchStart = pos;
+                    }
+                    return stateBase;
+                }
+                nTaken++;
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            if (size > check.length) {
+                int oldSize = check.length;
+                int newSize = Math.max(size, oldSize * 2);
+                base = Arrays.copyOf(base, newSize);
+                check = Arrays.copyOf(check, newSize);
+                Arrays.fill(check, oldSize, newSize, FREE);
+            }
+        }
+    }
+
+    /**
+     * @return code of the char or -1 if it is not in the alphabet
+     */
+    private int code(char chr) {
+        int index = Arrays.binarySearch(alphabet, chr);
+        return (index < 0) ? -1 : index + 1;
+    }
+
+    /**
+     * Returns the state, which is reached by the word's chars from the start state
+     *
+     * @param word  word to traverse
+     * @param start state to start from
+     * @return state or -1 if there is no such path
+     */
+    private int traverse(String word, int start) {
+        int state = start;
+        for (int i = 0, len = word.length(); i < len; i++) {
+            int code = code(word.charAt(i));
+            if (code < 0) {
+                return -1;
+            }
+            int next = base[state] + code;
+            if (next >= check.length || check[next] != state) {
+                return -1;
+            }
+            state = next;
+        }
+        return state;
+    }
+
+    /**
+     * Returns value of the word, which ends in the state
+     *
+     * @return value or -1 if no word ends in the state
+     */
+    private int valueOf(int state) {
+        int end = base[state] + END_OF_WORD;
+        if (end >= check.length || check[end] != state) {
+            return -1;
+        }
+        return -base[end] - 1;
+    }
+
+    /**
+     * Returns value of the word (its index in the array trie was built from, unless values were specified)
+     *
+     * @param word word to find
+     * @return value or -1 if word is not in the trie
+     */
+    public int getValue(String word) {
+        int state = traverse(word.toLowerCase(), ROOT);
+        return (state < 0) ? -1 : valueOf(state);
+    }
+
+    /**
+     * @param word - word to find
+     * @return true if and only if the whole word is in dictionary
+     */
+    public boolean hasWord(String word) {
+        return getValue(word) >= 0;
+    }
+
+    /**
+     * Returns wordInfo of a specified word. If null, then word is not in the trie
+     *
+     * @param word - word to get wordInfo for
+     * @return wordInfo of the word or null
+     */
+    public Trie.WordInfo getWordInfo(String word) {
+        int value = getValue(word);
+        return (value < 0) ? null : wordInfos[value];
+    }
+
+    /**
+     * Returns wordInfo of the word with specified value
+     *
+     * @param value value of the word
+     * @return wordInfo of the word
+     */
+    public Trie.WordInfo getWordInfo(int value) {
+        return wordInfos[value];
+    }
+
+    /**
+     * @param word word to get positional index for
+     * @return positional index of the word or null if there is no such word
+     * @throws IllegalStateException if the index was moved to a spill file
+     */
+    public PositionalIndex getPositionalIndex(String word) {
+        Trie.WordInfo wordInfo = getWordInfo(word);
+        return (wordInfo == null) ? null : wordInfo.getPositionalIndex();
+    }
+
+    /**
+     * Returns the words, which match the one given:
+     * - 	if there is a * at the end of the word,
+     * returns all the words, which start as the word given (without *)
+     * - 	otherwise returns the given word
+     * if is in dictionary
+     *
+     * @param word - word to find
+     * @return Iterable with all words that match the stated one.
+     */
+    public Iterable<String> search(String word) {
+        word = word.toLowerCase();
+        int length = word.length();
+        if (word.charAt(length - 1) == '*') {
+            return prefixSearch(word.substring(0, length - 1));
+        } else if (hasWord(word)) {
+            LinkedList<String> res = new LinkedList<String>();
+            res.add(word);
+            return res;
+        }
+        return new LinkedList<String>();
+    }
+
+    /**
+     * Returns words, which start from word.
+     * Words are found lazily, while the result is iterated over.
+     *
+     * @param word - the String found words should start from
+     * @return words, which start from word.
+     */
+    public Iterable<String> prefixSearch(String word) {
+        return prefixSearch(word, NO_LIMIT);
+    }
+
+    /**
+     * Returns at most limit words, which start from word.
+     * Words are found lazily, while the result is iterated over.
+     *
+     * @param word  the String found words should start from
+     * @param limit maximum number of words to return, or {@link #NO_LIMIT}
+     * @return words, which start from word.
+     */
+    public Iterable<String> prefixSearch(final String word, final int limit) {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return prefixIterator(word, limit);
+            }
+        };
+    }
+
+    /**
+     * Returns iterator over words, which start from prefix, in sorted order.
+     * Can also be used to get values of those words without creating Strings.
+     *
+     * @param prefix the String found words should start from
+     * @param limit  maximum number of words to return, or {@link #NO_LIMIT}
+     * @return iterator over words, which start from prefix
+     */
+    public WordIterator prefixIterator(String prefix, int limit) {
+        return new WordIterator(prefix.toLowerCase(), limit);
+    }
+
+    /**
+     * Iterates over words of the subtrie in sorted order using depth-first search.
+     * Keeps the path in a single char buffer and the stack of states in int arrays,
+     * so a String is created only when a word is requested.
+     */
+    public class WordIterator implements Iterator<String> {
+        /** chars on the path from the root to the current state */
+        private char[] path;
+        private int prefixLength;
+        /** states on the path from the prefix state, and the code of the next child to visit for each */
+        private int[] states;
+        private int[] nextCodes;
+        private int top;
+        private int limit;
+        private int nFound;
+        private int value;
+        /** true if the next word was already found, but not returned yet */
+        private boolean ready;
+
+        private WordIterator(String prefix, int limit) {
+            this.prefixLength = prefix.length();
+            this.path = Arrays.copyOf(prefix.toCharArray(), prefixLength + INITIAL_PATH_SIZE);
+            this.states = new int[INITIAL_PATH_SIZE];
+            this.nextCodes = new int[INITIAL_PATH_SIZE];
+            this.limit = limit;
+            this.value = -1;
+            int state = traverse(prefix, ROOT);
+            this.top = (state < 0) ? -1 : 0;
+            if (state >= 0) {
+                states[0] = state;
+            }
+        }
+
+        /**
+         * Moves to the next word
+         *
+         * @return true if there is one
+         */
+        private boolean advance() {
+            if (limit != NO_LIMIT && nFound >= limit) {
+                top = -1;
+            }
+            while (top >= 0) {
+                int state = states[top];
+                int code = nextCodes[top];
+                int child = base[state] + code;
+                if (code > alphabet.length || child >= check.length) {
+                    // all children were visited, go back to the parent
+                    top--;
+                    continue;
+                }
+                nextCodes[top] = code + 1;
+                if (check[child] != state) {
+                    continue;
+                }
+                if (code == END_OF_WORD) {
+                    value = -base[child] - 1;
+                    nFound++;
+                    return true;
+                }
+                // go down to the child
+                top++;
+                if (top == states.length) {
+                    states = Arrays.copyOf(states, top * 2);
+                    nextCodes = Arrays.copyOf(nextCodes, top * 2);
+                }
+                if (prefixLength + top > path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[prefixLength + top - 1] = alphabet[code - 1];
+                states[top] = child;
+                nextCodes[top] = END_OF_WORD;
+            }
+            value = -1;
+            return false;
+        }
+
+        public boolean hasNext() {
+            if (!ready) {
+                ready = advance();
+            }
+            return ready;
+        }
+
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return getWord();
+        }
+
+        /**
+         * Moves to the next word without creating a String
+         *
+         * @return value of the next word or -1 if there are no more words
+         */
+        public int nextValue() {
+            if (!hasNext()) {
+                return -1;
+            }
+            ready = false;
+            return value;
+        }
+
+        /**
+         * @return value of the current word
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * @return the current word
+         */
+        public String getWord() {
+            return new String(path, 0, prefixLength + top);
+        }
+
+        /**
+         * @return the current word read backwards (is used by tries of reversed words)
+         */
+        public String getReversedWord() {
+            int length = prefixLength + top;
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = path[length - 1 - i];
+            }
+            return new String(chars);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Returns all words lazily in sorted order
+     *
+     * @return all words of the trie
+     */
+    public Iterable<String> getAllWords() {
+        return prefixSearch("");
+    }
+
+    /**
+     * Finds all words accepted by Levenshtein automaton.
+     * Trie is walked depth-first, and subtries are skipped as soon as the automaton
+     * can no longer accept any word starting with their prefix.
+     *
+     * @param automaton automaton built for a lowercase word
+     * @return for each found word <code>distance &lt;&lt; 32 | value</code>, in sorted order of words
+     */
+    public long[] fuzzySearch(LevenshteinAutomaton automaton) {
+        long[] found = new long[INITIAL_PATH_SIZE];
+        int nFound = 0;
+        int rowLength = automaton.getRowLength();
+        int maxDepth = rowLength + automaton.getMaxDistance();
+        int[][] rows = new int[maxDepth + 1][rowLength];
+        int[] states = new int[maxDepth + 1];
+        int[] nextCodes = new int[maxDepth + 1];
+        automaton.start(rows[0]);
+        states[0] = ROOT;
+        int top = 0;
+        while (top >= 0) {
+            int state = states[top];
+            int code = nextCodes[top];
+            int child = base[state] + code;
+            if (code > alphabet.length || child >= check.length) {
+                top--;
+                continue;
+            }
+            nextCodes[top] = code + 1;
+            if (check[child] != state) {
+                continue;
+            }
+            if (code == END_OF_WORD) {
+                int distance = automaton.distance(rows[top], top);
+                if (distance >= 0) {
+                    if (nFound == found.length) {
+                        found = Arrays.copyOf(found, nFound * 2);
+                    }
+                    found[nFound++] = ((long) distance << 32) | (-base[child] - 1);
+                }
+            } else if (top + 1 < maxDepth
+                    && automaton.step(rows[top], top, alphabet[code - 1], rows[top + 1])) {
+                top++;
+                states[top] = child;
+                nextCodes[top] = END_OF_WORD;
+            }
+        }
+        return Arrays.copyOf(found, nFound);
+    }
+
+    /**
+     * Builds trie of the same words written backwards, which is used for postfix search.
+     * Reversed words are mapped to the same values, so word infos are shared and not copied.
+     *
+     * @return trie of reversed words
+     */
+    public DoubleArrayTrie reversed() {
+        String[] reversedWords = new String[nWords];
+        WordIterator words = prefixIterator("", NO_LIMIT);
+        for (int i = 0; words.nextValue() >= 0; i++) {
+            reversedWords[i] = words.getReversedWord();
+        }
+        Arrays.sort(reversedWords);
+        int[] values = new int[nWords];
+        for (int i = 0; i < nWords; i++) {
+            values[i] = getValue(new StringBuilder(reversedWords[i]).reverse().toString());
+        }
+        return new DoubleArrayTrie(reversedWords, values, wordInfos);
+    }
+
+    /**
+     * @return number of words in dictionary
+     */
+    public int getnUniqueWords() {
+        return nWords;
+    }
+
+    /**
+     * @return number of bytes base and check arrays take up
+     */
+    public long getSizeInBytes() {
+        return 8L * base.length;
+    }
+}
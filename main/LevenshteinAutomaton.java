@@ -0,0 +1,119 @@
+package main;
+
+/**
+ * Automaton, which accepts all words within specified Levenshtein distance from a given word.
+ * <p>
+ * A state of the automaton is a row of the edit distance matrix: i-th element is the distance
+ * between the chars read so far and the first i chars of the word.
+ * Only the diagonal band of width 2 * maxDistance + 1 is computed, other elements
+ * are always greater than maxDistance. When all elements of a row exceed maxDistance,
+ * no continuation can be accepted, so tries can skip the whole subtrie.
+ */
+public class LevenshteinAutomaton {
+
+    private String word;
+    private int maxDistance;
+
+    /**
+     * @param word        word to compare with
+     * @param maxDistance maximum number of insertions, deletions and substitutions
+     */
+    public LevenshteinAutomaton(String word, int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Distance should not be negative: " + maxDistance);
+        }
+        this.word = word;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return length of rows, which are used as states
+     */
+    public int getRowLength() {
+        return word.length() + 1;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Writes the start state (no chars read) to row
+     *
+     * @param row array of length {@link #getRowLength()}
+     */
+    public void start(int[] row) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Math.min(i, maxDistance + 1);
+        }
+    }
+
+    /**
+     * Computes the state after reading one more char
+     *
+     * @param row   current state
+     * @param depth number of chars read before chr
+     * @param chr   the next char
+     * @param next  array to write the new state to
+     * @return false if no word with such beginning can be accepted
+     */
+    public boolean step(int[] row, int depth, char chr, int[] next) {
+        int length = word.length();
+        int limit = maxDistance + 1;
+        int readChars = depth + 1;
+        int from = Math.max(1, readChars - maxDistance);
+        int to = Math.min(length, readChars + maxDistance);
+        next[0] = Math.min(readChars, limit);
+        if (from > 1) {
+            next[from - 1] = limit;
+        }
+        boolean canMatch = next[0] <= maxDistance;
+        for (int i = from; i <= to; i++) {
+            int cost = (word.charAt(i - 1) == chr) ? 0 : 1;
+            int distance = Math.min(row[i - 1] + cost, Math.min(row[i], next[i - 1]) + 1);
+            next[i] = Math.min(distance, limit);
+            if (next[i] <= maxDistance) {
+                canMatch = true;
+            }
+        }
+        if (to < length) {
+            next[to + 1] = limit;
+        }
+        return canMatch;
+    }
+
+    /**
+     * @param row   state after reading all chars of a word
+     * @param depth number of read chars
+     * @return distance between the word and the automaton's word, or -1 if it is greater than maxDistance
+     */
+    public int distance(int[] row, int depth) {
+        if (word.length() - depth > maxDistance) {
+            // the last element is outside of the computed band
+            return -1;
+        }
+        int distance = row[word.length()];
+        return (distance <= maxDistance) ? distance : -1;
+    }
+
+    /**
+     * Runs the automaton over the whole candidate
+     *
+     * @param candidate word to compare with
+     * @return distance between the words, or -1 if it is greater than maxDistance
+     */
+    public int distance(String candidate) {
+        int[] row = new int[getRowLength()];
+        int[] next = new int[getRowLength()];
+        start(row);
+        for (int i = 0, len = candidate.length(); i < len; i++) {
+            if (!step(row, i, candidate.charAt(i), next)) {
+                return -1;
+            }
+            int[] tmp = row;
+            row = next;
+            next = tmp;
+        }
+        return distance(row, candidate.length());
+    }
+}
@@ -1,12 +1,15 @@
 package main;
 
 import java.io.*;
+import main.compression.PositionalIndexSpillFile;
 import main.indexes.PositionalIndex;
 
 public class Term implements Comparable<Term>, Serializable {
     private String word;
     private int frequency;
     private PositionalIndex positionalIndex;
+    // number of the positional index in spill file, if it was moved there
+    private int spillEntry = -1;
 
     public Term(String word, int frequency, PositionalIndex positionalIndex) {
         this.word = word;
@@ -53,23 +56,32 @@ public class Term implements Comparable<Term>, Serializable {
         positionalIndex.addSkips();
     }
 
-    public PositionalIndex getPositionalIndex(String dir, int pos) throws IOException, ClassNotFoundException {
+    /**
+     * Returns positional index of the term, reading it from spill file, if it was moved there
+     *
+     * @param spillFile file, the index was moved to
+     * @return positional index of the term
+     * @throws IOException if the spill file could not be read
+     */
+    public PositionalIndex getPositionalIndex(PositionalIndexSpillFile spillFile) throws IOException {
         if (positionalIndex != null) {
             return positionalIndex;
         }
-        ObjectInputStream oin = new ObjectInputStream(new FileInputStream(dir + "\\" + pos + ".out"));
-        positionalIndex = (PositionalIndex) oin.readObject();
+        positionalIndex = spillFile.read(spillEntry);
         return positionalIndex;
     }
 
-    public void movePositionalIndexOnDisk(String filename) throws IOException {
+    /**
+     * Appends positional index to the spill file and frees memory it took
+     *
+     * @param spillFile file to move the index to
+     * @throws IOException if the spill file could not be written
+     */
+    public void movePositionalIndexOnDisk(PositionalIndexSpillFile spillFile) throws IOException {
         if (positionalIndex == null) {
             return;
         }
-        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename));
-        oos.writeObject(positionalIndex);
-        oos.flush();
-        oos.close();
+        spillEntry = spillFile.append(positionalIndex);
         positionalIndex = null;
     }
 
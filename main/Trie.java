@@ -1,10 +1,16 @@
 package main;
 
+import main.compression.PositionalIndexSpillFile;
 import main.indexes.PositionalIndex;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
@@ -21,6 +27,10 @@ import java.util.TreeMap;
  */
 public class Trie implements Serializable {
 
+    /** limit of prefix search, which means all words should be returned */
+    public static final int NO_LIMIT = -1;
+    private static final int INITIAL_PATH_SIZE = 16;
+
     Node root;
     int nUniqueWords;
 
@@ -42,9 +52,13 @@ public class Trie implements Serializable {
         }
     }
 
-    public class WordInfo implements Serializable {
+    public static class WordInfo implements Serializable {
         private int frequency;
+        // positions added since the last move to the spill file, null if there are none
         private PositionalIndex positionalIndex;
+        // entries of the spill file with earlier parts of the positional index, in order of document IDs
+        private int[] spillEntries;
+        private int nSpillEntries;
 
         private WordInfo() {
             this(1, new PositionalIndex());
@@ -59,10 +73,71 @@ public class Trie implements Serializable {
             return frequency;
         }
 
+        /**
+         * @return positional index of the word
+         * @throws IllegalStateException if parts of the index were moved to a spill file,
+         *                               then {@link #getPositionalIndex(PositionalIndexSpillFile)} should be used
+         */
         public PositionalIndex getPositionalIndex() {
+            if (nSpillEntries > 0) {
+                throw new IllegalStateException("Positional index was moved to a spill file");
+            }
             return positionalIndex;
         }
 
+        /**
+         * Returns positional index of the word, joining parts, which were moved to the spill file,
+         * with the part, which is still in memory. Joined index is not kept, so memory stays free.
+         *
+         * @param spillFile file, parts of the index were moved to
+         * @return positional index of the word
+         * @throws IOException if the spill file could not be read
+         */
+        public PositionalIndex getPositionalIndex(PositionalIndexSpillFile spillFile) throws IOException {
+            if (nSpillEntries == 0) {
+                return positionalIndex;
+            }
+            if (nSpillEntries == 1 && positionalIndex == null) {
+                return spillFile.read(spillEntries[0]);
+            }
+            // parts do not share documents, as they are moved only between files
+            PositionalIndex res = new PositionalIndex();
+            for (int i = 0; i < nSpillEntries; i++) {
+                appendNodes(res, spillFile.read(spillEntries[i]));
+            }
+            if (positionalIndex != null) {
+                appendNodes(res, positionalIndex);
+            }
+            res.addSkips();
+            return res;
+        }
+
+        /**
+         * Appends positional index to the spill file and frees memory it took
+         *
+         * @param spillFile file to move the index to
+         * @throws IOException if the spill file could not be written
+         */
+        public void movePositionalIndexOnDisk(PositionalIndexSpillFile spillFile) throws IOException {
+            if (positionalIndex == null) {
+                return;
+            }
+            if (spillEntries == null) {
+                spillEntries = new int[1];
+            } else if (nSpillEntries == spillEntries.length) {
+                spillEntries = Arrays.copyOf(spillEntries, nSpillEntries * 2);
+            }
+            spillEntries[nSpillEntries++] = spillFile.append(positionalIndex);
+            positionalIndex = null;
+        }
+
+        private static void appendNodes(PositionalIndex to, PositionalIndex from) {
+            PositionalIndex.NodeIterator itr = from.nodeIterator();
+            while (itr.hasNext()) {
+                to.addLast(itr.next());
+            }
+        }
+
         public String toString() {
             return "freq: " + frequency + ", index:\n" + positionalIndex;
         }
@@ -129,6 +204,10 @@ public class Trie implements Serializable {
      * @param pos      word's position in the doc
      */
     private void addExistingWord(WordInfo wordInfo, int ID, int pos) {
+        if (wordInfo.positionalIndex == null) {
+            // earlier positions were moved to the spill file
+            wordInfo.positionalIndex = new PositionalIndex();
+        }
         wordInfo.positionalIndex.addLast(ID, pos);
         wordInfo.frequency++;
     }
@@ -201,7 +280,7 @@ public class Trie implements Serializable {
             if (current.wordInfo == null) {
                 return null;
             } else {
-                return current.wordInfo.positionalIndex;
+                return current.wordInfo.getPositionalIndex();
             }
         }
     }
@@ -231,49 +310,178 @@ public class Trie implements Serializable {
 
     /**
      * Returns words, which start from word.
+     * Words are found lazily, while the result is iterated over.
      *
      * @param word - the String found words should start from
      * @return words, which start from word.
      */
     public Iterable<String> prefixSearch(String word) {
-        Node current = traverse(word, root);
-        if (current == null) {
-            return new LinkedList<String>();
+        return prefixSearch(word, NO_LIMIT);
+    }
+
+    /**
+     * Returns at most limit words, which start from word.
+     * Words are found lazily, while the result is iterated over.
+     *
+     * @param word  the String found words should start from
+     * @param limit maximum number of words to return, or {@link #NO_LIMIT}
+     * @return words, which start from word.
+     */
+    public Iterable<String> prefixSearch(String word, final int limit) {
+        final String prefix = word.toLowerCase();
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new WordIterator(traverse(prefix, root), prefix, limit);
+            }
+        };
+    }
+
+    /**
+     * Iterates over words, which are children of start node, in sorted order using depth-first search.
+     * Keeps the path in a single char buffer, so a String is created only for found words.
+     */
+    private class WordIterator implements Iterator<String> {
+        private char[] path;
+        private int prefixLength;
+        /** iterators over children of nodes on the path */
+        private ArrayList<Iterator<Entry<Character, Node>>> stack;
+        private int limit;
+        private int nFound;
+        private String next;
+
+        /**
+         * @param start  node to start getting words from, if null, there are no words
+         * @param prefix chars on the path to the start node
+         * @param limit  maximum number of words to return, or {@link #NO_LIMIT}
+         */
+        private WordIterator(Node start, String prefix, int limit) {
+            this.prefixLength = prefix.length();
+            this.path = Arrays.copyOf(prefix.toCharArray(), prefixLength + INITIAL_PATH_SIZE);
+            this.stack = new ArrayList<Iterator<Entry<Character, Node>>>();
+            this.limit = limit;
+            if (start != null) {
+                stack.add(start.children.entrySet().iterator());
+                if (start.wordInfo != null) {
+                    // the word itself is in the trie
+                    next = prefix;
+                }
+            }
         }
-        LinkedList<String> results = getAllWords(current, word);
-        if (current.wordInfo != null) {
-            // the word itself is in the trie
-            results.addFirst(word);
+
+        /**
+         * Finds the next word
+         *
+         * @return the next word or null if there are no more words
+         */
+        private String advance() {
+            while (!stack.isEmpty()) {
+                int top = stack.size() - 1;
+                Iterator<Entry<Character, Node>> children = stack.get(top);
+                if (!children.hasNext()) {
+                    stack.remove(top);
+                    continue;
+                }
+                Entry<Character, Node> entry = children.next();
+                int length = prefixLength + top + 1;
+                if (length > path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[length - 1] = entry.getKey();
+                Node node = entry.getValue();
+                stack.add(node.children.entrySet().iterator());
+                if (node.wordInfo != null) {
+                    return new String(path, 0, length);
+                }
+            }
+            return null;
+        }
+
+        public boolean hasNext() {
+            if (limit != NO_LIMIT && nFound >= limit) {
+                return false;
+            }
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String word = next;
+            next = null;
+            nFound++;
+            return word;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
-        return results;
     }
 
     /**
-     * Returns all words, which are children of start node,
-     * (those words start from word String and the chars from child nodes
-     * should be concatenated to the word String to get a full word)
+     * Returns all words lazily in sorted order
      *
-     * @param start - node to start getting words from
-     * @param word  - String to concatenate words to
-     * @return all words, which are children of start node
+     * @return all words of the trie
      */
-    private LinkedList<String> getAllWords(Node start, String word) {
-        LinkedList<String> words = new LinkedList<String>();
+    public Iterable<String> getAllWords() {
+        return prefixSearch("");
+    }
+
+    /**
+     * Builds compact read-only trie with the same words and wordInfos.
+     * This trie can be dropped afterwards.
+     *
+     * @return double-array trie with all words of this trie
+     */
+    public DoubleArrayTrie toDoubleArrayTrie() {
+        ArrayList<String> words = new ArrayList<String>();
+        ArrayList<WordInfo> wordInfos = new ArrayList<WordInfo>();
+        collectWords(root, new StringBuilder(), words, wordInfos);
+        return new DoubleArrayTrie(words.toArray(new String[words.size()]),
+                wordInfos.toArray(new WordInfo[wordInfos.size()]));
+    }
+
+    /**
+     * Adds words, which are children of start node, and their wordInfos to the lists in sorted order
+     *
+     * @param start     node to start getting words from
+     * @param word      chars on the path to the start node
+     * @param words     list to add words to
+     * @param wordInfos list to add wordInfos to
+     */
+    private void collectWords(Node start, StringBuilder word, ArrayList<String> words, ArrayList<WordInfo> wordInfos) {
+        if (start.wordInfo != null) {
+            words.add(word.toString());
+            wordInfos.add(start.wordInfo);
+        }
         for (Entry<Character, Node> entry : start.children.entrySet()) {
-            Node next = entry.getValue();
-            String foundWord = word + entry.getKey();
-            if (next.wordInfo != null) {
-                // end of word
-                words.add(foundWord);
-            }
-            words.addAll(getAllWords(next, foundWord));
+            word.append(entry.getKey());
+            collectWords(entry.getValue(), word, words, wordInfos);
+            word.setLength(word.length() - 1);
         }
+    }
 
-        return words;
+    /**
+     * Moves positional indexes of all words to the spill file to free memory.
+     * Positions, which are added afterwards, are kept in memory until the next move.
+     *
+     * @param spillFile file to move the indexes to
+     * @throws IOException if the spill file could not be written
+     */
+    public void movePositionalIndexesOnDisk(PositionalIndexSpillFile spillFile) throws IOException {
+        movePositionalIndexesOnDisk(root, spillFile);
     }
 
-    public LinkedList<String> getAllWords() {
-        return getAllWords(root, "");
+    private void movePositionalIndexesOnDisk(Node start, PositionalIndexSpillFile spillFile) throws IOException {
+        if (start.wordInfo != null) {
+            start.wordInfo.movePositionalIndexOnDisk(spillFile);
+        }
+        for (Node child : start.children.values()) {
+            movePositionalIndexesOnDisk(child, spillFile);
+        }
     }
 
     /**
@@ -1,6 +1,7 @@
 package main;
 
 import main.dictionary.DictionaryList;
+import utils.MinimalPerfectHash;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -196,6 +197,56 @@ public class Utils {
         return -1;
     }
 
+    /**
+     * Finds string in the array of Strings using minimal perfect hash function,
+     * built over this array.
+     *
+     * @param arr  array to search for the string in
+     * @param hash minimal perfect hash function built over arr
+     * @param str  string to search for
+     * @return index where the string is in the array, or, if the string isn't in the array, - 1
+     */
+    public static int hashSearch(String[] arr, MinimalPerfectHash hash, String str) {
+        int index = hash.get(str);
+        return (index >= 0 && arr[index].equals(str)) ? index : -1;
+    }
+
+    /**
+     * Checks if the word matches wildcard query, in which * stands for any number of chars.
+     * Does not allocate memory: on mismatch returns to the last * and lets it match one more char.
+     *
+     * @param word  word to check
+     * @param query wildcard query
+     * @return true if the whole word matches the query
+     */
+    public static boolean matchesWildcard(String word, String query) {
+        int wordLength = word.length();
+        int queryLength = query.length();
+        int w = 0;
+        int q = 0;
+        // position of the last * in query and of the word's char it was matched up to
+        int star = -1;
+        int starMatch = 0;
+        while (w < wordLength) {
+            if (q < queryLength && query.charAt(q) == '*') {
+                star = q++;
+                starMatch = w;
+            } else if (q < queryLength && query.charAt(q) == word.charAt(w)) {
+                q++;
+                w++;
+            } else if (star >= 0) {
+                q = star + 1;
+                w = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (q < queryLength && query.charAt(q) == '*') {
+            q++;
+        }
+        return q == queryLength;
+    }
+
     public static LinkedList<File> listFilesFor(final File dir) {
         LinkedList<File> files = new LinkedList<File>();
         for (final File fileEntry : dir.listFiles()) {
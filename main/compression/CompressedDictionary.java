@@ -1,6 +1,7 @@
 package main.compression;
 
 import main.Utils;
+import utils.MinimalPerfectHash;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -8,294 +9,416 @@ import java.io.FileReader;
 import java.io.IOException;
 
 /**
- * Compresses an array of strings to one String, using <b>blocked compression</b>.<br>
- * Every block is additionally compressed using <b>front coding</b>,
- * if words in a block have the same prefix (which they probably have).
+ * Compresses an array of strings to one byte array, using <b>blocked compression</b>.<br>
+ * Terms are stored in UTF-8 (every char is encoded separately, so surrogate pairs take 6 bytes),
+ * which keeps the order of encoded terms the same as the order of Strings.<br>
+ * Every block is additionally compressed using incremental <b>front coding</b>:
+ * the first term of a block is written in full, and every next term is written as
+ * the number of bytes it shares with the previous term and the rest of its bytes.
  * For example, block has 4 words: <code>automata, automate, automatic, automation</code>.
- * In compressed String they are written like this:<br>
- * <code>#7automat1a1e2ic3ion</code><br>
- * where numbers say how long is the word (or a part of it), written after them
- * and # means that this block is compressed using front coding.<br>
- * If words in a block don't have the same prefix (for example, if the letter changes),
- * they are written like this (for words <code>reason, retrieval, sauce, shiver</code>):<br>
- * <code>6reason9retrieval5sauce6shiver</code>
+ * In compressed array they are written like this:<br>
+ * <code>8automata 7 1e 7 2ic 8 2on</code><br>
+ * where the first number of a term says how many bytes it shares with the previous one,
+ * and the second one says how many bytes are written after it.
+ * Numbers are written using variable byte encoding, so numbers under 128 take up one byte.
+ * <p>
+ * The block size is configurable: bigger blocks take up less space (less full terms and block pointers),
+ * but make lookup scan more terms.
+ * <p>
+ * Term lookup does a binary search over the first terms of blocks
+ * and then a linear scan inside one block, comparing bytes right in the dictionary array,
+ * so no Strings are created while searching.
+ * <p>
+ * Optionally, a minimal perfect hash function can be built over the terms.
+ * Then lookup takes O(1): the function gives the only possible term ID,
+ * and the term with this ID is compared to the query once.
  *
  * @author Polina Shlepakova
  */
 public class CompressedDictionary {
 
-    private String dictionary;
+    private byte[] dictionary;
     private int[] blockIndexes;
     private int nTerms;
+    private int blockSize;
+    /** maps terms to their IDs, if null, binary search is used */
+    private MinimalPerfectHash hash;
 
-    private static final int BLOCK_SIZE = 4;
-    private static final char FRONT_CODING_MARKER = '#';
-    private static final int DICTIONARY_ARRAY_SIZE = 10000000;
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+    private static final int INITIAL_QUERY_SIZE = 32;
 
     public CompressedDictionary(String[] terms) {
+        this(terms, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param terms array of terms sorted alphabetically
+     * @param blockSize amount of terms in one block
+     */
+    public CompressedDictionary(String[] terms, int blockSize) {
+        this(terms, blockSize, false);
+    }
+
+    /**
+     * @param terms array of terms sorted alphabetically
+     * @param blockSize amount of terms in one block
+     * @param usePerfectHash whether to build minimal perfect hash function for term lookup
+     */
+    public CompressedDictionary(String[] terms, int blockSize, boolean usePerfectHash) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size should be positive, got " + blockSize);
+        }
         this.nTerms = terms.length;
-        int nBlocks = (int) Math.ceil((double) nTerms / (double) BLOCK_SIZE);
+        this.blockSize = blockSize;
+        int nBlocks = (int) Math.ceil((double) nTerms / (double) blockSize);
         this.blockIndexes = new int[nBlocks];
-        this.dictionary = new String(toDictionaryCharArray(terms, nBlocks));
+        this.dictionary = toDictionaryByteArray(terms);
+        this.hash = usePerfectHash ? new MinimalPerfectHash(terms) : null;
     }
 
     /**
-     * Convert array of Strings (terms) to dictionary char array, which contains all the terms,
+     * Convert array of Strings (terms) to dictionary byte array, which contains all the terms,
      * compressed using blocked compression and front coding.
+     * The size of the array is counted beforehand, so no intermediary arrays are created.
+     * @param terms array of terms present in dictionary and sorted alphabetically
+     * @return resulting byte array
+     */
+    private byte[] toDictionaryByteArray(String[] terms) {
+        int size = writeTerms(terms, null);
+        byte[] dicArr = new byte[size];
+        int dicArrIndex = writeTerms(terms, dicArr);
+        assert(dicArrIndex == size);
+        return dicArr;
+    }
+
+    /**
+     * Writes all terms to dictionary array and saves indexes of blocks' starts.
+     * If dictionary array is null, just counts how many bytes the terms would take up.
+     * Shared prefixes are counted in bytes, so that every term differs from the previous one
+     * right after the shared bytes (lookup relies on it).
      * @param terms array of terms present in dictionary and sorted alphabetically
-     * @param nBlocks number of blocks used for blocked compression
-     * @return resulting char array
+     * @param dicArr dictionary array to write to or null
+     * @return the position of the last written byte + 1
      */
-    private char[] toDictionaryCharArray(String[] terms, int nBlocks) {
-        // temp array with compressed terms, which will be converted to dictionary String
-        // (to avoid creating a lot of intermediary Strings and littering the heap)
-//        char[] dicArr = new char[2147483647];
-        char[] dicArr = new char[DICTIONARY_ARRAY_SIZE];
+    private int writeTerms(String[] terms, byte[] dicArr) {
         int dicArrIndex = 0;
-        // iterate over blocks
-        for (int i = 0; i < nBlocks; i++) {
-            // collect terms, which will be in this block
-            if ((i * BLOCK_SIZE + BLOCK_SIZE) > nTerms) {
-                int a = 9;
-            }
-            String[] blockTerms = new String[(i * BLOCK_SIZE + BLOCK_SIZE) <= nTerms ? BLOCK_SIZE :
-                    nTerms % BLOCK_SIZE]; // the last incomplete block
-            for (int j = 0; j < blockTerms.length; j++) {
-                blockTerms[j] = terms[i * BLOCK_SIZE + j];
+        // encoded previous and current terms
+        byte[] prev = new byte[INITIAL_QUERY_SIZE];
+        byte[] curr = new byte[INITIAL_QUERY_SIZE];
+        int prevLength = 0;
+        for (int i = 0; i < nTerms; i++) {
+            String term = terms[i];
+            if (curr.length < term.length() * 3) {
+                curr = new byte[term.length() * 3];
             }
-            // write block to temp char array
-            // save index of block's start
-            this.blockIndexes[i] = dicArrIndex;
-            // get common prefix for terms in a block
-            char[] prefix = commonPrefix(blockTerms);
-            if (prefix.length > 0) {
-                dicArrIndex = doFrontCoding(blockTerms, dicArr, dicArrIndex, prefix);
+            int currLength = encode(curr, 0, term, 0, term.length());
+            // the first term of a block is written in full
+            int sharedLength = 0;
+            if (i % blockSize == 0) {
+                if (dicArr != null) {
+                    this.blockIndexes[i / blockSize] = dicArrIndex;
+                }
             } else {
-                // no common prefix, so use just blocked compression
-                dicArrIndex = doBlockedCompression(blockTerms, dicArr, dicArrIndex);
+                int maxShared = Math.min(prevLength, currLength);
+                while (sharedLength < maxShared && prev[sharedLength] == curr[sharedLength]) {
+                    sharedLength++;
+                }
+                dicArrIndex = writeNumber(dicArr, dicArrIndex, sharedLength);
+            }
+            // write the number of bytes left and the bytes themselves
+            int postfixLength = currLength - sharedLength;
+            dicArrIndex = writeNumber(dicArr, dicArrIndex, postfixLength);
+            if (dicArr != null) {
+                System.arraycopy(curr, sharedLength, dicArr, dicArrIndex, postfixLength);
             }
+            dicArrIndex += postfixLength;
+
+            byte[] temp = prev;
+            prev = curr;
+            curr = temp;
+            prevLength = currLength;
         }
-        char[] res = new char[dicArrIndex];
-        System.arraycopy(dicArr, 0, res, 0, dicArrIndex);
-        return res;
+        return dicArrIndex;
     }
 
     /**
-     * Write block to dictionary char array, using blocked compression and front coding.
-     * For example, for block terms <code>automata, automate, automatic, automation</code>
-     * the result would look like this:<br>
-     * <code>#7automat1a1e2ic3ion</code><br>
-     * where numbers say how long is the word (or a part of it), written after them
-     * and # means that this block is compressed using front coding.<br>
-     *
-     * @param blockTerms terms, which belong to the block
-     * @param dicArr dictionary char array to write block to
-     * @param dicArrIndex position in char array to start writing from
-     * @param prefix block terms' common prefix
-     * @return the position of the last written char + 1
+     * Writes number to dictionary array using variable byte encoding.
+     * If dictionary array is null, only counts the bytes.
+     * @param dicArr dictionary array to write to or null
+     * @param pos position to start writing from
+     * @param num number to write
+     * @return the position of the last written byte + 1
      */
-    private int doFrontCoding(String[] blockTerms, char[] dicArr, int dicArrIndex, char[] prefix) {
-        // mark that this block is compressed using front coding
-        dicArr[dicArrIndex++] = FRONT_CODING_MARKER;
-        // write prefix length to dicArr
-        int prefixLength = prefix.length;
-        dicArrIndex = writeNumberToCharArray(dicArr, prefixLength, dicArrIndex);
-        // write prefix to dicArr
-        for (char chr : prefix) {
-            dicArr[dicArrIndex++] = chr;
-        }
+    private static int writeNumber(byte[] dicArr, int pos, int num) {
+        return (dicArr == null) ? pos + VariableByte.size(num) : VariableByte.write(dicArr, pos, num);
+    }
 
-        // iterate over block terms
-        for (int j = 0; j < blockTerms.length; j++) {
-            int termLength = blockTerms[j].length();
-            // write curr term's postfix length to dicArr
-            dicArrIndex = writeNumberToCharArray(dicArr, termLength - prefixLength, dicArrIndex);
-            // write curr term's postfix to dicArr
-            for (int k = prefixLength; k < termLength; k++) {
-                dicArr[dicArrIndex++] = blockTerms[j].charAt(k);
+    /**
+     * Encodes chars of the string in UTF-8 one by one and writes them to byte array
+     * @param arr array to write to
+     * @param pos position to start writing from
+     * @param str string to encode
+     * @param from index of the first char
+     * @param to index of the last char + 1
+     * @return the position of the last written byte + 1
+     */
+    private static int encode(byte[] arr, int pos, String str, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char chr = str.charAt(i);
+            if (chr < 0x80) {
+                arr[pos++] = (byte) chr;
+            } else if (chr < 0x800) {
+                arr[pos++] = (byte) (0xC0 | (chr >> 6));
+                arr[pos++] = (byte) (0x80 | (chr & 0x3F));
+            } else {
+                arr[pos++] = (byte) (0xE0 | (chr >> 12));
+                arr[pos++] = (byte) (0x80 | ((chr >> 6) & 0x3F));
+                arr[pos++] = (byte) (0x80 | (chr & 0x3F));
             }
         }
-        return dicArrIndex;
+        return pos;
     }
 
     /**
-     * Write block to dictionary char array, using blocked compression.
-     * For example, for block terms <code>reason, retrieval, sauce, shiver</code>
-     * the result would look like this:<br>
-     * <code>6reason9retrieval5sauce6shiver</code><br>
-     *
-     * @param blockTerms terms, which belong to the block
-     * @param dicArr dictionary char array to write block to
-     * @param dicArrIndex position in char array to start writing from
-     * @return the position of the last written char + 1
+     * Decodes UTF-8 bytes to a String
+     * @param arr array to decode bytes from
+     * @param length number of bytes to decode
+     * @return decoded String
      */
-    private int doBlockedCompression(String[] blockTerms, char[] dicArr, int dicArrIndex) {
-        // iterate over block terms
-        for (int j = 0; j < blockTerms.length; j++) {
-            int termLength = blockTerms[j].length();
-            // write currTerm length to dicArr
-            dicArrIndex = writeNumberToCharArray(dicArr, termLength, dicArrIndex);
-            // write currTerm to dicArr
-            for (int k = 0; k < termLength; k++) {
-                dicArr[dicArrIndex++] = blockTerms[j].charAt(k);
+    private static String decode(byte[] arr, int length) {
+        char[] chars = new char[length];
+        int nChars = 0;
+        int pos = 0;
+        while (pos < length) {
+            int b = arr[pos++] & 0xFF;
+            if (b < 0x80) {
+                chars[nChars++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[nChars++] = (char) (((b & 0x1F) << 6) | (arr[pos++] & 0x3F));
+            } else {
+                int chr = ((b & 0x0F) << 12) | ((arr[pos++] & 0x3F) << 6);
+                chars[nChars++] = (char) (chr | (arr[pos++] & 0x3F));
             }
         }
-        return dicArrIndex;
+        return new String(chars, 0, nChars);
+    }
+
+    private String getTerm(int ID) {
+        if (ID < 0 || ID >= this.nTerms) {
+            return null;
+        }
+
+        int currPos = blockIndexes[ID / blockSize];    // access by block ID
+        // the first term of the block
+        int termLength = VariableByte.read(dictionary, currPos);
+        currPos = VariableByte.skip(dictionary, currPos);
+        byte[] term = new byte[termLength];
+        System.arraycopy(dictionary, currPos, term, 0, termLength);
+        currPos += termLength;
+        // rebuild terms one by one until reach the needed one
+        for (int i = 0, termPosInBlock = ID % blockSize; i < termPosInBlock; i++) {
+            int sharedLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            int postfixLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            termLength = sharedLength + postfixLength;
+            if (term.length < termLength) {
+                byte[] temp = new byte[termLength * 2];
+                System.arraycopy(term, 0, temp, 0, sharedLength);
+                term = temp;
+            }
+            System.arraycopy(dictionary, currPos, term, sharedLength, postfixLength);
+            currPos += postfixLength;
+        }
+        return decode(term, termLength);
     }
 
     /**
-     * Writes integer to char array starting from given position and returns the position of last written char + 1
-     * @param charArray array to write to
-     * @param number integer to write
-     * @param charArrayIndex index to start writing in array from
-     * @return the position of the last written char + 1
+     * Counts how many bytes, starting from <code>from</code>, are equal in the query
+     * and in the part of a term, stored in dictionary.
+     * @param query encoded query
+     * @param pos position of the part of a term in dictionary, which corresponds to from-th byte of the query
+     * @param length length of the part of a term in bytes
+     * @param from index of the first query byte to compare
+     * @param queryLength length of the encoded query
+     * @return number of bytes matched from the start of the query
      */
-    private int writeNumberToCharArray(char[] charArray, int number, int charArrayIndex) {
-        char[] lengthInChr = toCharArray(number);
-        // write prefix length to dicArr
-        for (char chr : lengthInChr) {
-            charArray[charArrayIndex++] = chr;
+    private int matchQuery(byte[] query, int pos, int length, int from, int queryLength) {
+        int matched = from;
+        int maxMatched = Math.min(from + length, queryLength);
+        while (matched < maxMatched && dictionary[pos + matched - from] == query[matched]) {
+            matched++;
         }
-        return charArrayIndex;
+        return matched;
     }
 
     /**
-     * Converts integer number to char array
-     * @param number integer to convert
-     * @return char array, which represents number
+     * Compares the first term of the block to the encoded query
+     * @param query encoded query
+     * @param block ID of the block
+     * @param queryLength length of the encoded query
+     * @return negative number, 0 or positive number if term is less, equal or greater than the query
      */
-    private char[] toCharArray(int number) {
-        return Integer.toString(number).toCharArray();
+    private int compareBlockHead(byte[] query, int block, int queryLength) {
+        int pos = blockIndexes[block];
+        int termLength = VariableByte.read(dictionary, pos);
+        pos = VariableByte.skip(dictionary, pos);
+        int matched = matchQuery(query, pos, termLength, 0, queryLength);
+        if (matched < termLength && matched < queryLength) {
+            return (dictionary[pos + matched] & 0xFF) - (query[matched] & 0xFF);
+        }
+        return termLength - queryLength;
     }
 
     /**
-     * Writes common prefix of all strings in array in char array and returns it
-     * @param strings array of strings to get common prefix for
-     * @return strings' common prefix as char array
+     * Checks whether the term with specified ID is equal to the encoded query.
+     * Walks the block from its first term, counting how many bytes of the query every term matches,
+     * without rebuilding the terms.
+     * @param query encoded query
+     * @param ID ID of the term to compare
+     * @param queryLength length of the encoded query
+     * @return true if and only if the term is equal to the query
      */
-    private char[] commonPrefix(String[] strings) {
-        int len = strings.length;
-        if (len <= 1) {
-            return new char[0];
+    private boolean termEquals(byte[] query, int ID, int queryLength) {
+        int currPos = blockIndexes[ID / blockSize];
+        int termLength = VariableByte.read(dictionary, currPos);
+        currPos = VariableByte.skip(dictionary, currPos);
+        int matched = matchQuery(query, currPos, termLength, 0, queryLength);
+        currPos += termLength;
+        for (int i = 0, termPosInBlock = ID % blockSize; i < termPosInBlock; i++) {
+            int sharedLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            int postfixLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            if (sharedLength < matched) {
+                // term differs from the previous one (and so from the query) right after shared bytes
+                matched = sharedLength;
+            } else if (sharedLength == matched) {
+                matched = matchQuery(query, currPos, postfixLength, sharedLength, queryLength);
+            }
+            termLength = sharedLength + postfixLength;
+            currPos += postfixLength;
         }
-        int minLength = minStringLength(strings);
-        char[] prefix = new char[minLength];
-        int prefixLength = 0;
-        // iterate over i-th chars in all strings
-        for (int i = 0; i < minLength; i++) {
-            boolean currCharIsCommon = true;
-            // define first string's i-th char as curr char to compare other chars to
-            char currChar = strings[0].charAt(i);
-            // iterate over other strings to compare their i-th chars
-            for (int j = 1; j < len; j++) {
-                if (strings[j].charAt(i) != currChar) {
-                    currCharIsCommon = false;
-                    break;
+        return matched == termLength && matched == queryLength;
+    }
+
+    public int getTermID(String term) {
+        if (nTerms == 0) {
+            return -1;
+        }
+        // every lookup encodes to its own array, so that the dictionary can be shared between threads
+        byte[] query = new byte[term.length() * 3];
+        int queryLength = encode(query, 0, term, 0, term.length());
+        if (hash != null) {
+            int ID = hash.get(term);
+            return termEquals(query, ID, queryLength) ? ID : -1;
+        }
+
+        // find the last block, which first term is not greater than the query
+        int lo = 0;
+        int hi = blockIndexes.length - 1;
+        while (lo < hi) {
+            int mid = (hi - lo + 1) / 2 + lo;
+            if (compareBlockHead(query, mid, queryLength) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int block = lo;
+
+        // scan the block, remembering how many bytes of the query the previous term matched
+        int currPos = blockIndexes[block];
+        int termLength = VariableByte.read(dictionary, currPos);
+        currPos = VariableByte.skip(dictionary, currPos);
+        int matched = matchQuery(query, currPos, termLength, 0, queryLength);
+        int ID = block * blockSize;
+        int blockEnd = Math.min(ID + blockSize, nTerms);
+        // number of bytes the current term shares with the previous one
+        int sharedLength = 0;
+        while (true) {
+            // if term shares more bytes with the previous one, than the previous one matched,
+            // it is less than the query as well, and matches the same number of bytes
+            if (sharedLength <= matched) {
+                if (matched == queryLength) {
+                    // the query is a prefix of the term (or they are equal)
+                    return (matched == termLength) ? ID : -1;
+                }
+                if (matched < termLength
+                        && (dictionary[currPos + matched - sharedLength] & 0xFF) > (query[matched] & 0xFF)) {
+                    // term is greater than the query, so the next ones are greater too
+                    return -1;
                 }
             }
-            // if curr char is common, add it to prefix, otherwise exit the loop (prefix is complete)
-            if (currCharIsCommon) {
-                prefix[i] = currChar;
-                prefixLength = i + 1;
-            } else {
-                break;
+            // term is less than the query, move on to the next one
+            currPos += termLength - sharedLength;
+            if (++ID >= blockEnd) {
+                return -1;
+            }
+            sharedLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            int postfixLength = VariableByte.read(dictionary, currPos);
+            currPos = VariableByte.skip(dictionary, currPos);
+            if (sharedLength < matched) {
+                // term differs from the previous one in a matched byte and it can only be greater
+                return -1;
+            } else if (sharedLength == matched) {
+                matched = matchQuery(query, currPos, postfixLength, sharedLength, queryLength);
             }
+            termLength = sharedLength + postfixLength;
         }
-        // cut prefix to the size
-        char[] res = new char[prefixLength];
-        System.arraycopy(prefix, 0, res, 0, prefixLength);
-        return res;
     }
 
     /**
-     * Returns the length of shortest String in array of Strings
-     * @param strings array of Strings
-     * @return the length of shortest String in array of Strings
+     * @return number of terms in dictionary
      */
-    private int minStringLength(String[] strings) {
-        int min = Integer.MAX_VALUE;
-//        for (String str : strings) {
-//            System.out.println(str + " ");
-//        }
-//        System.out.println();
-        for (int i = 0, len = strings.length; i < len; i++) {
-            if (strings[i].length() < min) {
-                min = strings[i].length();
-            }
-        }
-        return min;
+    public int getnTerms() {
+        return nTerms;
     }
 
-    private String getTerm(int ID) {
-        if (ID >= this.nTerms) {
-            return null;
-        }
+    /**
+     * @return number of terms in one block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
 
-        // #6sincer 1e 21efriendshipfriendship 3est 3ity #
-        int currPos = blockIndexes[ID / BLOCK_SIZE];    // access by block ID
-        // get prefix of term
-        String prefix;
-        if (dictionary.charAt(currPos) == FRONT_CODING_MARKER) {
-            currPos++;
-            int prefixLength = getNumberFromPos(currPos);
-            currPos += getNumberLength(prefixLength);
-            prefix = dictionary.substring(currPos, currPos + prefixLength);
-            currPos += prefixLength;
-        } else {
-            prefix = "";
-        }
-        // advance currPos until reach the position of term postfix
-        for (int i = 0, termPosInBlock = ID % BLOCK_SIZE; i < termPosInBlock; i++) {
-            // get length of term to read
-            int currTermLength = getNumberFromPos(currPos);
-            // advance current position after reading number
-            // and, since we need to just skip this term, add the length of it to currPos
-            currPos += getNumberLength(currTermLength) + currTermLength;
-        }
-        // get postfix and concatenate it to prefix
-        int postfixLength = getNumberFromPos(currPos);
-        currPos += getNumberLength(postfixLength);
-        return prefix + dictionary.substring(currPos, currPos + postfixLength);
+    /**
+     * @return whether lookup uses minimal perfect hash function
+     */
+    public boolean usesPerfectHash() {
+        return hash != null;
     }
 
-    private int getNumberFromPos(int pos) {
-        String number = "";
-        // #6sincer 1e 21efriendshipfriendship 3est 3ity #
-        // 2 - pos 1
-        // 1 - pos 2
-        // e - pos 3
-        char chr = dictionary.charAt(pos++);
-        if (chr == '0') {
-            return 0;
-        }
-        while(Character.isDigit(chr)) {
-            number += chr;
-            chr = dictionary.charAt(pos++);
-        }
-        return Integer.parseInt(number);
+    /**
+     * @return number of bytes dictionary array and block pointers take up (without perfect hash function)
+     */
+    public long getSizeInBytes() {
+        return dictionary.length + 4L * blockIndexes.length;
     }
 
-    private int getNumberLength(int number) {
-        return String.valueOf(number).length();
+    /**
+     * @return average number of bytes one term takes up
+     */
+    public double getBytesPerTerm() {
+        return (nTerms == 0) ? 0 : (double) getSizeInBytes() / nTerms;
     }
 
-    public int getTermID(String term) {
-        int lo = 0;
-        int hi = nTerms - 1;
-        int mid = (hi - lo) / 2 + lo;
-
-        while (lo <= hi) {
-            int cmp = getTerm(mid).compareTo(term);
-            if (cmp < 0) {
-                lo = mid + 1;
-            } else if (cmp > 0) {
-                hi = mid - 1;
-            } else {
-                return mid;
-            }
-            mid = (hi - lo) / 2 + lo;
+    /**
+     * Builds dictionaries with every specified block size and reports how much space they take up.
+     * @param terms array of terms sorted alphabetically
+     * @param blockSizes block sizes to compare
+     * @return report with one line per block size
+     */
+    public static String sizeReport(String[] terms, int... blockSizes) {
+        StringBuilder report = new StringBuilder();
+        report.append("Terms: ").append(terms.length).append('\n');
+        for (int blockSize : blockSizes) {
+            CompressedDictionary dic = new CompressedDictionary(terms, blockSize);
+            report.append(String.format("block size %4d: %12d bytes, %.2f bytes per term%n",
+                    blockSize, dic.getSizeInBytes(), dic.getBytesPerTerm()));
         }
-        return -1;
+        return report.toString();
     }
 
     public static void main(String[] args) {
@@ -338,8 +461,10 @@ public class CompressedDictionary {
             e.printStackTrace();
         }
 
+        System.out.println(sizeReport(terms, 1, 4, 8, 16, 32, 64));
+
         CompressedDictionary compDic = new CompressedDictionary(terms);
-        System.out.println(compDic.dictionary);
+        System.out.println("Dictionary size: " + compDic.getSizeInBytes() + " bytes");
 
         System.out.println();
         for (int i : compDic.blockIndexes) {
@@ -1,181 +1,633 @@
 package main.compression;
 
-import main.Tokenizer;
-import main.Utils;
+import main.BM25;
 
-import javax.rmi.CORBA.Util;
 import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 
 /**
- * Compresses the index using variable byte encoding
- * and provides methods to work with compressed index.
+ * Compresses the index and provides methods to work with compressed index.
+ * <p>
+ * Posting lists are stored one after another in a binary file.
+ * Lists of rare terms are stored as differences between IDs, each followed by term frequency,
+ * using variable byte encoding.
+ * Lists, which contain at least 1/16 of all documents, are stored as Roaring bitmaps followed by
+ * term frequencies in order of IDs, so that AND and OR queries with common terms are done with bitwise operations.
+ * The uncompressed index has a line of <code>id:tf</code> (or just <code>id</code>) postings for each term.
+ * <p>
+ * Each list starts with a skip table: for every {@link #BLOCK_SIZE} postings offset of the block's
+ * first posting (of its first term frequency for bitmaps), the last ID of the block
+ * and the maximum BM25 weight of the block's postings.
+ * The table lets {@link PostingsIterator} skip blocks without decoding them
+ * and gives upper bounds of scores for dynamic pruning of ranked queries.
  *
  * @author Polina Shlepakova
  */
 public class CompressedIndex {
 
     private File file;
-    private int[] indexPointers;
+    /** position of each posting list in the file, the last element is the file's length */
+    private long[] indexPointers;
+    /** terms, which posting lists are stored as bitmaps */
+    private BitSet bitmapTerms;
+    /** number of documents in each posting list */
+    private int[] docFrequencies;
+    /** maximum BM25 weight of each posting list */
+    private float[] maxWeights;
+    /** index file, which is mapped on the first use of an iterator */
+    private MappedFile mapped;
+    private int nDocs;
+    /** computes weights of the skip table, if null, every block has weight {@link BM25#MAX_WEIGHT} */
+    private BM25 scorer;
 
-    private static final int BYTE_CAPACITY = 7;
+    /** posting list is stored as bitmap, if it contains at least 1/DENSITY_THRESHOLD of documents */
+    private static final int DENSITY_THRESHOLD = 16;
+    /** number of postings in a block of the skip table */
+    public static final int BLOCK_SIZE = 64;
+    /** document ID of an iterator, which has no more documents */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
 
     /**
+     * Compresses index using only variable byte encoding
+     *
      * @param uncompFile index file to compress
      * @param nTerms amount of terms in the index
      * @param filepath filepath to a new compressed index
      */
     public CompressedIndex(File uncompFile, int nTerms, String filepath) {
+        this(uncompFile, nTerms, 0, filepath);
+    }
+
+    /**
+     * @param uncompFile index file to compress
+     * @param nTerms amount of terms in the index
+     * @param nDocs amount of documents, is used to find dense posting lists, 0 means no bitmaps are used
+     * @param filepath filepath to a new compressed index
+     */
+    public CompressedIndex(File uncompFile, int nTerms, int nDocs, String filepath) {
+        this(uncompFile, nTerms, nDocs, null, filepath);
+    }
+
+    /**
+     * @param uncompFile index file to compress
+     * @param nTerms amount of terms in the index
+     * @param nDocs amount of documents, is used to find dense posting lists, 0 means no bitmaps are used
+     * @param scorer BM25 of the collection to compute maximum weights of blocks
+     * @param filepath filepath to a new compressed index
+     */
+    public CompressedIndex(File uncompFile, int nTerms, int nDocs, BM25 scorer, String filepath) {
         this.file = new File(filepath);
-        this.indexPointers = new int[nTerms];
+        this.indexPointers = new long[nTerms + 1];
+        this.bitmapTerms = new BitSet(nTerms);
+        this.docFrequencies = new int[nTerms];
+        this.maxWeights = new float[nTerms];
+        this.nDocs = nDocs;
+        this.scorer = scorer;
         compressIndex(uncompFile);
     }
 
+    /**
+     * @return BM25, with which weights of blocks were computed, or null
+     */
+    public BM25 getScorer() {
+        return scorer;
+    }
+
+    /**
+     * @return number of terms in the index
+     */
+    public int size() {
+        return docFrequencies.length;
+    }
+
+    /**
+     * @return number of documents, which was used to find dense posting lists
+     */
+    public int getnDocs() {
+        return nDocs;
+    }
+
+    /**
+     * @return size of the index file in bytes
+     */
+    public long getSizeInBytes() {
+        return file.length();
+    }
+
+    /**
+     * @param termID id of the term
+     * @return true if posting list of the term is stored as bitmap
+     */
+    public boolean isStoredAsBitmap(int termID) {
+        return bitmapTerms.get(termID);
+    }
+
+    /**
+     * @param termID id of the term
+     * @return number of documents, which contain the term
+     */
+    public int getDocFrequency(int termID) {
+        return docFrequencies[termID];
+    }
+
+    /**
+     * @param termID id of the term
+     * @return maximum BM25 weight of the term's postings
+     */
+    public float getMaxWeight(int termID) {
+        return maxWeights[termID];
+    }
+
+    /**
+     * Returns iterator over postings of the term, which uses the skip table to advance
+     *
+     * @param termID id of the term
+     * @return iterator positioned before the first document
+     */
+    public PostingsIterator getPostings(int termID) {
+        return new PostingsIterator(termID);
+    }
+
+    /**
+     * Gets term frequencies of a particular term in documents of its posting list
+     * @param termID id of the term
+     * @return term frequencies in the same order as IDs of {@link #getPostingList(int)}
+     */
+    public int[] getFrequencies(int termID) {
+        byte[] bytes = readPostings(termID);
+        if (bytes == null) {
+            return new int[0];
+        }
+        int[] tfs = new int[docFrequencies[termID]];
+        int pos = bodyStart(bytes);
+        if (bitmapTerms.get(termID)) {
+            pos = bytes.length - tfsLength(bytes);
+            for (int i = 0; i < tfs.length; i++, pos = VariableByte.skip(bytes, pos)) {
+                tfs[i] = VariableByte.read(bytes, pos);
+            }
+        } else {
+            for (int i = 0; i < tfs.length; i++) {
+                // skip the ID difference
+                pos = VariableByte.skip(bytes, pos);
+                tfs[i] = VariableByte.read(bytes, pos);
+                pos = VariableByte.skip(bytes, pos);
+            }
+        }
+        return tfs;
+    }
+
+    /**
+     * @return number of bytes of term frequencies after the bitmap
+     */
+    private int tfsLength(byte[] bytes) {
+        int start = bodyStart(bytes);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes, start, bytes.length - start);
+        try {
+            RoaringBitmap.readFrom(new DataInputStream(in));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted bitmap in index file " + file.getPath(), e);
+        }
+        return in.available();
+    }
+
     /**
      * Gets posting list of a particular term in this index.
      * @param termID id of the term to get posting list for
      * @return an array of ints that represent postings
      */
     public int[] getPostingList(int termID) {
-        int pointer = indexPointers[termID];
-        FileInputStream in = null;
-        int[] res = null;
-        try {
-            in = new FileInputStream(this.file);
-            // skip previous bytes
-            skipPrevBytes(pointer, in);
-            res = readIDsDifferences(in, pointer, termID);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        byte[] bytes = readPostings(termID);
+        if (bytes == null) {
+            return new int[0];
+        }
+        if (bitmapTerms.get(termID)) {
+            return toBitmap(bytes).toArray();
+        }
+        return toIDList(bytes, bodyStart(bytes));
+    }
+
+    /**
+     * Gets posting list of a particular term as bitmap.
+     * Lists, which are stored with variable byte encoding, are converted.
+     * @param termID id of the term to get posting list for
+     * @return bitmap of IDs
+     */
+    public RoaringBitmap getBitmap(int termID) {
+        byte[] bytes = readPostings(termID);
+        if (bytes == null) {
+            return RoaringBitmap.fromSorted(new int[0], 0);
+        }
+        if (bitmapTerms.get(termID)) {
+            return toBitmap(bytes);
+        }
+        int[] IDs = toIDList(bytes, bodyStart(bytes));
+        return RoaringBitmap.fromSorted(IDs, IDs.length);
+    }
+
+    /**
+     * Returns IDs, which are contained in posting lists of all the terms.
+     * Bitmaps are intersected with each other first, then the shortest of other lists
+     * is merged with the rest and checked against the bitmap.
+     * @param termIDs ids of the terms
+     * @return sorted IDs
+     */
+    public int[] and(int[] termIDs) {
+        RoaringBitmap bitmap = null;
+        for (int termID : termIDs) {
+            if (bitmapTerms.get(termID)) {
+                RoaringBitmap termBitmap = getBitmap(termID);
+                bitmap = (bitmap == null) ? termBitmap : bitmap.and(termBitmap);
+            }
+        }
+        int[][] lists = new int[termIDs.length][];
+        int nLists = 0;
+        for (int termID : termIDs) {
+            if (!bitmapTerms.get(termID)) {
+                lists[nLists++] = getPostingList(termID);
+            }
+        }
+        if (nLists == 0) {
+            return (bitmap == null) ? new int[0] : bitmap.toArray();
+        }
+        // intersect the shortest lists first
+        Arrays.sort(lists, 0, nLists, new Comparator<int[]>() {
+            public int compare(int[] list1, int[] list2) {
+                return list1.length - list2.length;
+            }
+        });
+        int[] result = lists[0];
+        int size = result.length;
+        for (int i = 1; i < nLists && size > 0; i++) {
+            size = intersect(result, size, lists[i]);
+        }
+        if (bitmap != null) {
+            int newSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (bitmap.contains(result[i])) {
+                    result[newSize++] = result[i];
                 }
             }
+            size = newSize;
         }
-        return toIDList(res);
+        return Arrays.copyOf(result, size);
     }
 
     /**
-     * Converts an array of id differences to an array of IDs
-     * IDs are stored as a difference between current and previous to save space.
-     * For example, instead of storing 0 30 100 500 550, the compressed index stores 0 30 70 400 50
-     * @param idDiff an array of differences between IDs
-     * @return
+     * Intersects sorted lists, writing the result to the first one
+     * @return size of the result
      */
-    private int[] toIDList(int[] idDiff) {
-        for (int i = 1, len = idDiff.length; i < len; i++) {
-            idDiff[i] = idDiff[i - 1] + idDiff[i];
+    private static int intersect(int[] result, int size, int[] list) {
+        int newSize = 0;
+        for (int i = 0, j = 0; i < size && j < list.length; ) {
+            if (result[i] < list[j]) {
+                i++;
+            } else if (result[i] > list[j]) {
+                j++;
+            } else {
+                result[newSize++] = result[i];
+                i++;
+                j++;
+            }
         }
-        return idDiff;
+        return newSize;
     }
 
     /**
-     * Reads an array of ID differences from index file
-     * @param in stream for an index file
-     * @param pointer
-     * @param termID id of a term to read array for
-     * @return
+     * Returns IDs, which are contained in posting list of at least one of the terms
+     * @param termIDs ids of the terms
+     * @return sorted IDs
      */
-    private int[] readIDsDifferences(FileInputStream in, int pointer, int termID) {
-        int[] IDs = new int[10];
-        int IDsIndex = 0;
-        if (termID < (indexPointers.length - 1)) {
-            int nextPointer = indexPointers[termID + 1];
-            while (pointer < nextPointer) {
-                if (IDsIndex >= IDs.length) {
-                    IDs = Utils.resize(IDs, IDs.length * 2);
-                }
-                int ID = readID(in);
-                IDs[IDsIndex++] = ID;
-                pointer += getNBytesToStore(ID);
+    public int[] or(int[] termIDs) {
+        RoaringBitmap bitmap = null;
+        for (int termID : termIDs) {
+            RoaringBitmap termBitmap = getBitmap(termID);
+            bitmap = (bitmap == null) ? termBitmap : bitmap.or(termBitmap);
+        }
+        return (bitmap == null) ? new int[0] : bitmap.toArray();
+    }
+
+    /**
+     * Iterates over postings of one term.
+     * {@link #advance(int)} skips blocks, which end before the target, using the skip table,
+     * and {@link #advanceShallow(int)} moves only in the skip table to get the maximum weight of a block
+     * without decoding it. Postings are read from the mapped index file only when the iterator gets to them,
+     * bitmaps are walked container by container without being decoded to an array.
+     */
+    public class PostingsIterator {
+
+        private MappedFile.Cursor in;
+        /** IDs of a bitmap list, null if IDs are stored as differences */
+        private RoaringBitmap bitmap;
+        private int nDocs;
+        /** number of read postings */
+        private int index;
+        private int docID;
+        private int frequency;
+        /** position of the first posting or term frequency in the file */
+        private long dataStart;
+        private int[] blockOffsets;
+        private int[] blockLastIDs;
+        private float[] blockWeights;
+        /** block, to which the iterator was advanced shallowly */
+        private int block;
+        private float maxWeight;
+
+        private PostingsIterator(int termID) {
+            nDocs = docFrequencies[termID];
+            maxWeight = maxWeights[termID];
+            docID = -1;
+            in = getMapped().cursor(indexPointers[termID]);
+            // length of the skip table is not needed, as the table is read anyway
+            in.skip();
+            int nBlocks = in.read();
+            blockOffsets = new int[nBlocks];
+            blockLastIDs = new int[nBlocks];
+            blockWeights = new float[nBlocks];
+            int offset = 0;
+            int lastID = 0;
+            for (int i = 0; i < nBlocks; i++) {
+                offset += in.read();
+                lastID += in.read();
+                blockOffsets[i] = offset;
+                blockLastIDs[i] = lastID;
+                blockWeights[i] = Float.intBitsToFloat(in.readInt());
             }
-        } else {
-            // last ID list, terminates when the file ends
-            int ID;
-            while ((ID = readID(in)) >= 0) {
-                if (IDsIndex >= IDs.length) {
-                    IDs = Utils.resize(IDs, IDs.length * 2);
+            if (bitmapTerms.get(termID)) {
+                try {
+                    bitmap = RoaringBitmap.readFrom(new DataInputStream(in.asInputStream()));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Corrupted bitmap in index file " + file.getPath(), e);
                 }
-                IDs[IDsIndex++] = ID;
             }
+            dataStart = in.position();
+        }
+
+        /**
+         * Moves to the next document
+         *
+         * @return false if there are no more documents, then ID of the document is {@link #NO_MORE_DOCS}
+         */
+        public boolean nextDoc() {
+            if (index == nDocs) {
+                docID = NO_MORE_DOCS;
+                return false;
+            }
+            if (bitmap == null) {
+                docID = ((index == 0) ? 0 : docID) + in.read();
+            } else {
+                docID = bitmap.nextValue(docID + 1);
+            }
+            frequency = in.read();
+            index++;
+            return true;
+        }
+
+        /**
+         * Moves to the first document with ID not smaller than target.
+         * Does not move if the current document already satisfies it.
+         *
+         * @param target document ID to look for
+         * @return false if there is no such document
+         */
+        public boolean advance(int target) {
+            if (index > 0 && docID >= target) {
+                return docID != NO_MORE_DOCS;
+            }
+            int targetBlock = (index == 0) ? 0 : (index - 1) / BLOCK_SIZE;
+            while (targetBlock < blockLastIDs.length && blockLastIDs[targetBlock] < target) {
+                targetBlock++;
+            }
+            if (targetBlock == blockLastIDs.length) {
+                index = nDocs;
+                docID = NO_MORE_DOCS;
+                return false;
+            }
+            if (targetBlock * BLOCK_SIZE > index) {
+                index = targetBlock * BLOCK_SIZE;
+                in.position(dataStart + blockOffsets[targetBlock]);
+                docID = (targetBlock == 0) ? 0 : blockLastIDs[targetBlock - 1];
+            }
+            // the block contains the target, so it is found before the end of the list
+            while (docID < target) {
+                nextDoc();
+            }
+            return true;
+        }
+
+        /**
+         * Moves only the block pointer to the block, which may contain the target, postings are not read.
+         * Targets should not decrease.
+         *
+         * @param target document ID to look for
+         * @return false if all documents of the list are smaller than target
+         */
+        public boolean advanceShallow(int target) {
+            while (block < blockLastIDs.length && blockLastIDs[block] < target) {
+                block++;
+            }
+            return block < blockLastIDs.length;
+        }
+
+        /**
+         * @return maximum weight of postings in the block of the last shallow advance, 0 after the last block
+         */
+        public float getBlockMaxWeight() {
+            return (block < blockWeights.length) ? blockWeights[block] : 0;
+        }
+
+        /**
+         * @return the last document ID of the block of the last shallow advance
+         */
+        public int getBlockLastDocID() {
+            return (block < blockLastIDs.length) ? blockLastIDs[block] : NO_MORE_DOCS;
+        }
+
+        /**
+         * @return maximum weight of all postings of the term
+         */
+        public float getMaxWeight() {
+            return maxWeight;
+        }
+
+        /**
+         * @return ID of the current document, -1 before the first one and {@link #NO_MORE_DOCS} after the last one
+         */
+        public int getDocID() {
+            return docID;
         }
-        IDs = Utils.resize(IDs, IDsIndex);
-        return IDs;
+
+        /**
+         * @return frequency of the term in the current document
+         */
+        public int getFrequency() {
+            return frequency;
+        }
+    }
+
+    private MappedFile getMapped() {
+        if (mapped == null) {
+            mapped = new MappedFile(file);
+        }
+        return mapped;
     }
 
-    private int readID(FileInputStream in) {
-        String idStr = "";
+    /**
+     * Reads bytes of the term's posting list from the index file
+     * @param termID id of the term
+     * @return bytes of posting list or null if the file could not be read
+     */
+    private byte[] readPostings(int termID) {
+        long pointer = indexPointers[termID];
+        // one list is much less than 2 GB, while the file may be larger
+        byte[] bytes = new byte[(int) (indexPointers[termID + 1] - pointer)];
+        RandomAccessFile in = null;
         try {
-            int ID;
-            while ((ID = in.read()) >= 0) {
-                String byteStr = Integer.toBinaryString(ID);
-                idStr += byteStr.substring(1);
-                // terminating byte
-                if (byteStr.length() == BYTE_CAPACITY + 1 && byteStr.charAt(0) == '1') {
-                    break;
+            in = new RandomAccessFile(this.file, "r");
+            in.seek(pointer);
+            in.readFully(bytes);
+        } catch (IOException e) {
+            System.err.println("Could not read index file " + file.getPath());
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (idStr.equals("")) {
-            return -1;
-        } else{
-            return Integer.parseInt(idStr, 2);
         }
+        return bytes;
     }
 
     /**
-     * Counts number of bytes needed to store specified integer
-     * @param num integer to count storage bytes for
-     * @return number of bytes needed to store num
+     * Skip table is preceded by its length in bytes
+     * @return position of the first posting or of the bitmap
      */
-    private int getNBytesToStore(int num) {
-        String binNum = Integer.toBinaryString(num);
-        return (int) Math.ceil((double) binNum.length() / (double) BYTE_CAPACITY);
+    private static int bodyStart(byte[] bytes) {
+        return VariableByte.skip(bytes, 0) + VariableByte.read(bytes, 0);
     }
 
-    private void skipPrevBytes(int pointer, FileInputStream in) {
-        byte[] skipped = new byte[pointer];
+    /**
+     * Reads bitmap, term frequencies after it are ignored
+     */
+    private RoaringBitmap toBitmap(byte[] bytes) {
+        int start = bodyStart(bytes);
         try {
-            in.read(skipped);
+            return RoaringBitmap.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bytes, start, bytes.length - start)));
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalStateException("Corrupted bitmap in index file " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Decodes variable byte encoded differences between IDs and converts them to IDs.
+     * IDs are stored as a difference between current and previous to save space.
+     * For example, instead of storing 0 30 100 500 550, the compressed index stores 0 30 70 400 50
+     * @param bytes encoded differences between IDs, each followed by term frequency
+     * @param start position of the first difference
+     * @return an array of IDs
+     */
+    private int[] toIDList(byte[] bytes, int start) {
+        int[] IDs = new int[10];
+        int IDsIndex = 0;
+        int ID = 0;
+        for (int pos = start; pos < bytes.length; pos = VariableByte.skip(bytes, VariableByte.skip(bytes, pos))) {
+            if (IDsIndex >= IDs.length) {
+                IDs = Arrays.copyOf(IDs, IDs.length * 2);
+            }
+            ID += VariableByte.read(bytes, pos);
+            IDs[IDsIndex++] = ID;
         }
+        return Arrays.copyOf(IDs, IDsIndex);
     }
 
     private void compressIndex(File uncompFile) {
         BufferedReader br = null;
-        FileOutputStream out = null;
+        OutputStream out = null;
         try {
             br = new BufferedReader(new FileReader(uncompFile));
-            out = new FileOutputStream(this.file);
+            out = new BufferedOutputStream(new FileOutputStream(this.file));
             String line;
             String[] input;
             int pointer = 0;
-            int byteNum = 0;
-            int difference = 0;
-            // get posting list as array of Strings, which represent IDs
+            // number of written bytes, streams count them only in ints
+            long size = 0;
+            int[] IDs = new int[10];
+            int[] tfs = new int[10];
+            ByteArrayOutputStream skips = new ByteArrayOutputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            // get posting list as array of Strings, which represent IDs with term frequencies
             while ((line = br.readLine()) != null) {
-                indexPointers[pointer++] = byteNum;
-                input = line.split(" ");
-                // iterate over IDs
+                indexPointers[pointer] = size;
+                input = line.trim().split(" ");
+                if (input.length > IDs.length) {
+                    IDs = new int[Math.max(input.length, IDs.length * 2)];
+                    tfs = new int[IDs.length];
+                }
+                int nIDs = 0;
                 for (String str : input) {
-                    // determine the difference between curr and prev IDs
-                    difference = Integer.parseInt(str) - difference;
-                    assert(difference >= 0);
-                    // create byte array to represent difference
-                    int[] byteArr = toByteArray(difference);
-                    // iterate over bytes and write them in file
-                    for (int b : byteArr) {
-                        out.write(b);
-                        byteNum++;
+                    if (!str.isEmpty()) {
+                        int separator = str.indexOf(':');
+                        if (separator < 0) {
+                            IDs[nIDs] = Integer.parseInt(str);
+                            tfs[nIDs] = 1;
+                        } else {
+                            IDs[nIDs] = Integer.parseInt(str.substring(0, separator));
+                            tfs[nIDs] = Integer.parseInt(str.substring(separator + 1));
+                        }
+                        nIDs++;
                     }
                 }
+                docFrequencies[pointer] = nIDs;
+                skips.reset();
+                body.reset();
+                boolean isBitmap = nDocs > 0 && (long) nIDs * DENSITY_THRESHOLD >= nDocs;
+                if (isBitmap) {
+                    bitmapTerms.set(pointer);
+                    RoaringBitmap.fromSorted(IDs, nIDs).writeTo(bodyOut);
+                }
+                // offsets of blocks are counted from the first posting or term frequency
+                int dataStart = body.size();
+                int prevID = 0;
+                int prevBlockID = 0;
+                int prevBlockOffset = 0;
+                float blockWeight = 0;
+                VariableByte.write(skips, (nIDs + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                for (int i = 0; i < nIDs; i++) {
+                    if (i % BLOCK_SIZE == 0) {
+                        int offset = body.size() - dataStart;
+                        VariableByte.write(skips, offset - prevBlockOffset);
+                        prevBlockOffset = offset;
+                        blockWeight = 0;
+                    }
+                    if (!isBitmap) {
+                        // write differences between curr and prev IDs
+                        assert (IDs[i] >= prevID);
+                        VariableByte.write(body, IDs[i] - prevID);
+                    }
+                    VariableByte.write(body, tfs[i]);
+                    prevID = IDs[i];
+                    blockWeight = Math.max(blockWeight,
+                            (scorer == null) ? BM25.MAX_WEIGHT : scorer.weight(tfs[i], IDs[i]));
+                    if (i % BLOCK_SIZE == BLOCK_SIZE - 1 || i == nIDs - 1) {
+                        VariableByte.write(skips, prevID - prevBlockID);
+                        writeWeight(skips, blockWeight);
+                        prevBlockID = prevID;
+                        maxWeights[pointer] = Math.max(maxWeights[pointer], blockWeight);
+                    }
+                }
+                size += VariableByte.write(out, skips.size());
+                skips.writeTo(out);
+                body.writeTo(out);
+                size += skips.size() + body.size();
+                pointer++;
             }
+            indexPointers[pointer] = size;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -194,33 +646,12 @@ public class CompressedIndex {
         }
     }
 
-    private int[] toByteArray(int num) {
-        String binNum = Integer.toBinaryString(num);
-        // number of bytes needed to store this number
-        int nBytes = (int) Math.ceil((double) binNum.length() / (double) BYTE_CAPACITY);
-        int[] byteArr = new int[nBytes];
-        for (int i = nBytes - 1, j = 0; i >= 0; i--) {
-            byteArr[j++] = toByte(binNum, i);
-        }
-        return byteArr;
-    }
-
-    private int toByte(String binNum, int bytePos) {
-        int endPos = binNum.length() - bytePos * BYTE_CAPACITY;
-        int startPos = endPos - BYTE_CAPACITY;
-        if (startPos < 0) {
-            startPos = 0;
-        }
-        String res = binNum.substring(startPos, endPos);
-        char[] prefix = new char[8 - res.length()];
-        for (int i = 0; i < prefix.length; i++) {
-            prefix[i] = '0';
-        }
-        if (bytePos == 0) {
-            prefix[0] = '1';
-        }
-        res = new String(prefix) + res;
-        return Integer.parseInt(res, 2);
+    private static void writeWeight(OutputStream out, float weight) throws IOException {
+        int bits = Float.floatToIntBits(weight);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,363 @@
+package main.compression;
+
+import main.indexes.PositionalIndex;
+import main.indexes.PositionsIterator;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Stores positional index on disk in two files, which are read through memory mapping.
+ * <p>
+ * The first file (<code>.doc</code>) contains document IDs and term frequencies,
+ * the second one (<code>.pos</code>) contains positions of the terms in documents.
+ * So queries, which need only document IDs, never read positions,
+ * and phrase queries decode positions only of documents, which contain all their terms.
+ * <p>
+ * Posting list of a term in the document file starts with the number of documents and a skip table,
+ * followed by pairs of ID difference and frequency, all in variable byte encoding.
+ * Every {@link #SKIP_INTERVAL} documents the skip table has an entry with the last ID before the block
+ * and offsets of the block in both files, so that a list can be advanced without decoding all of it.
+ * Positions of a document are stored as differences between them.
+ * <p>
+ * Files may be larger than 2 GB: pointers are longs and files are mapped in chunks by {@link MappedFile}.
+ * Terms are written one at a time, so indexes of all terms do not have to be in memory together.
+ */
+public class CompressedPositionalIndex {
+
+    public static final String DOC_EXTENSION = ".doc";
+    public static final String POS_EXTENSION = ".pos";
+    /** number of documents between entries of the skip table */
+    public static final int SKIP_INTERVAL = 64;
+
+    private File docFile;
+    private File posFile;
+    /** position of each term's list in the document file, the last element is the file's length */
+    private long[] docPointers;
+    /** position of each term's positions in the position file, the last element is the file's length */
+    private long[] posPointers;
+    private int[] docFrequencies;
+    // files are mapped on first use
+    private MappedFile docs;
+    private MappedFile positions;
+
+    /**
+     * Writes positional indexes to files filepath.doc and filepath.pos
+     *
+     * @param indexes  positional index of each term, index of the array is term ID, null means no documents
+     * @param filepath filepath to the new index without extension
+     */
+    public CompressedPositionalIndex(PositionalIndex[] indexes, String filepath) {
+        this(Arrays.asList(indexes).iterator(), indexes.length, filepath);
+    }
+
+    /**
+     * Writes positional indexes to files filepath.doc and filepath.pos, taking them one at a time,
+     * so that an index can be dropped as soon as it is written
+     *
+     * @param indexes  positional index of each term in order of term IDs, null means no documents
+     * @param nTerms   number of terms
+     * @param filepath filepath to the new index without extension
+     */
+    public CompressedPositionalIndex(Iterator<PositionalIndex> indexes, int nTerms, String filepath) {
+        this.docFile = new File(filepath + DOC_EXTENSION);
+        this.posFile = new File(filepath + POS_EXTENSION);
+        this.docPointers = new long[nTerms + 1];
+        this.posPointers = new long[nTerms + 1];
+        this.docFrequencies = new int[nTerms];
+        writeIndex(indexes);
+    }
+
+    /**
+     * @return number of terms in the index
+     */
+    public int size() {
+        return docFrequencies.length;
+    }
+
+    /**
+     * @param termID id of the term
+     * @return number of documents, which contain the term
+     */
+    public int getDocFrequency(int termID) {
+        return docFrequencies[termID];
+    }
+
+    /**
+     * Returns iterator over documents of the term, which reads positions only when they are requested
+     *
+     * @param termID id of the term
+     * @return iterator positioned before the first document
+     */
+    public PostingsIterator getPostings(int termID) {
+        return new PostingsIterator(termID);
+    }
+
+    /**
+     * Reads IDs of documents, which contain the term, without reading positions
+     *
+     * @param termID id of the term
+     * @return sorted document IDs
+     */
+    public int[] getDocIDs(int termID) {
+        int[] IDs = new int[docFrequencies[termID]];
+        PostingsIterator itr = getPostings(termID);
+        for (int i = 0; itr.nextDoc(); i++) {
+            IDs[i] = itr.getDocID();
+        }
+        return IDs;
+    }
+
+    /**
+     * @param termID id of the term
+     * @param docID  id of the document
+     * @return sorted positions of the term in the document, empty if the document does not contain it
+     */
+    public int[] getPositions(int termID, int docID) {
+        PostingsIterator itr = getPostings(termID);
+        if (!itr.advance(docID) || itr.getDocID() != docID) {
+            return new int[0];
+        }
+        return itr.getPositions();
+    }
+
+    /**
+     * @return size of both files in bytes
+     */
+    public long getSizeInBytes() {
+        return docFile.length() + posFile.length();
+    }
+
+    /**
+     * Iterates over documents of one term.
+     * Positions of skipped documents are not decoded, even their bytes are not read,
+     * until positions of some later document are requested.
+     */
+    public class PostingsIterator implements PositionsIterator {
+
+        private MappedFile.Cursor in;
+        private MappedFile.Cursor posIn;
+        private int nDocs;
+        /** number of read documents */
+        private int index;
+        private int docID;
+        private int frequency;
+        // skip table: last ID before the block, offsets of the block in the document and position files
+        private int[] skipDocIDs;
+        private long[] skipDocOffsets;
+        private long[] skipPosOffsets;
+        private long docsStart;
+        private long posStart;
+        /** position in the position file, from which positions of not yet decoded documents start */
+        private long posPointer;
+        /** number of positions to skip from posPointer to get to positions of the current document */
+        private int nSkippedPositions;
+        /** position of the current document's positions, or -1 if they were not found yet */
+        private long currentPosPointer;
+
+        private PostingsIterator(int termID) {
+            in = getDocs().cursor(docPointers[termID]);
+            nDocs = in.read();
+            int nSkips = in.read();
+            skipDocIDs = new int[nSkips];
+            skipDocOffsets = new long[nSkips];
+            skipPosOffsets = new long[nSkips];
+            int skipDocID = 0;
+            long docOffset = 0;
+            long posOffset = 0;
+            for (int i = 0; i < nSkips; i++) {
+                skipDocID += in.read();
+                docOffset += in.read();
+                posOffset += in.read();
+                skipDocIDs[i] = skipDocID;
+                skipDocOffsets[i] = docOffset;
+                skipPosOffsets[i] = posOffset;
+            }
+            docsStart = in.position();
+            posStart = posPointers[termID];
+            posPointer = posStart;
+            currentPosPointer = -1;
+        }
+
+        /**
+         * Moves to the next document
+         *
+         * @return false if there are no more documents
+         */
+        public boolean nextDoc() {
+            if (index == nDocs) {
+                return false;
+            }
+            if (currentPosPointer < 0) {
+                nSkippedPositions += frequency;
+            }
+            docID += in.read();
+            frequency = in.read();
+            index++;
+            currentPosPointer = -1;
+            return true;
+        }
+
+        /**
+         * Moves to the first document with ID not smaller than target.
+         * Does not move if the current document already satisfies it.
+         *
+         * @param target document ID to look for
+         * @return false if there is no such document
+         */
+        public boolean advance(int target) {
+            if (index > 0 && docID >= target) {
+                return true;
+            }
+            // find the last block, which starts after the current document and before the target
+            int block = -1;
+            for (int i = index / SKIP_INTERVAL; i < skipDocIDs.length && skipDocIDs[i] < target; i++) {
+                block = i;
+            }
+            if (block >= 0 && (block + 1) * SKIP_INTERVAL > index) {
+                in.position(docsStart + skipDocOffsets[block]);
+                index = (block + 1) * SKIP_INTERVAL;
+                docID = skipDocIDs[block];
+                frequency = 0;
+                posPointer = posStart + skipPosOffsets[block];
+                nSkippedPositions = 0;
+                currentPosPointer = -1;
+            }
+            while (nextDoc()) {
+                if (docID >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getDocID() {
+            return docID;
+        }
+
+        /**
+         * @return number of positions of the term in the current document
+         */
+        public int getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * Decodes positions of the term in the current document
+         *
+         * @return sorted positions
+         */
+        public int[] getPositions() {
+            if (posIn == null) {
+                posIn = getPositionFile().cursor(posPointer);
+            }
+            if (currentPosPointer < 0) {
+                posIn.position(posPointer);
+                for (int i = 0; i < nSkippedPositions; i++) {
+                    posIn.skip();
+                }
+                currentPosPointer = posIn.position();
+            } else {
+                posIn.position(currentPosPointer);
+            }
+            int[] res = new int[frequency];
+            int pos = 0;
+            for (int i = 0; i < frequency; i++) {
+                pos += posIn.read();
+                res[i] = pos;
+            }
+            posPointer = posIn.position();
+            nSkippedPositions = 0;
+            return res;
+        }
+    }
+
+    private MappedFile getDocs() {
+        if (docs == null) {
+            docs = new MappedFile(docFile);
+        }
+        return docs;
+    }
+
+    private MappedFile getPositionFile() {
+        if (positions == null) {
+            positions = new MappedFile(posFile);
+        }
+        return positions;
+    }
+
+    private void writeIndex(Iterator<PositionalIndex> indexes) {
+        OutputStream docOut = null;
+        OutputStream posOut = null;
+        try {
+            docOut = new BufferedOutputStream(new FileOutputStream(docFile));
+            posOut = new BufferedOutputStream(new FileOutputStream(posFile));
+            // numbers of written bytes, streams count them only in ints
+            long docSize = 0;
+            long posSize = 0;
+            // documents and skip table of one term, the table is written before documents
+            ByteArrayOutputStream termDocs = new ByteArrayOutputStream();
+            ByteArrayOutputStream skips = new ByteArrayOutputStream();
+            for (int termID = 0; termID < docFrequencies.length; termID++) {
+                docPointers[termID] = docSize;
+                posPointers[termID] = posSize;
+                termDocs.reset();
+                skips.reset();
+                int nDocs = 0;
+                int nSkips = 0;
+                int prevID = 0;
+                int prevSkipID = 0;
+                int prevDocOffset = 0;
+                long prevPosOffset = 0;
+                PositionalIndex index = indexes.hasNext() ? indexes.next() : null;
+                PositionalIndex.NodeIterator itr = (index == null) ? null : index.nodeIterator();
+                while (itr != null && itr.hasNext()) {
+                    PositionalIndex.Node node = itr.next();
+                    if (nDocs > 0 && nDocs % SKIP_INTERVAL == 0) {
+                        long posOffset = posSize - posPointers[termID];
+                        VariableByte.write(skips, prevID - prevSkipID);
+                        VariableByte.write(skips, termDocs.size() - prevDocOffset);
+                        // positions of one block are much less than 2 GB
+                        VariableByte.write(skips, (int) (posOffset - prevPosOffset));
+                        prevSkipID = prevID;
+                        prevDocOffset = termDocs.size();
+                        prevPosOffset = posOffset;
+                        nSkips++;
+                    }
+                    int[] nodePositions = node.getPositions();
+                    VariableByte.write(termDocs, node.getID() - prevID);
+                    VariableByte.write(termDocs, nodePositions.length);
+                    int prevPos = 0;
+                    for (int pos : nodePositions) {
+                        posSize += VariableByte.write(posOut, pos - prevPos);
+                        prevPos = pos;
+                    }
+                    prevID = node.getID();
+                    nDocs++;
+                }
+                docFrequencies[termID] = nDocs;
+                docSize += VariableByte.write(docOut, nDocs);
+                docSize += VariableByte.write(docOut, nSkips);
+                skips.writeTo(docOut);
+                termDocs.writeTo(docOut);
+                docSize += skips.size() + termDocs.size();
+            }
+            docPointers[docFrequencies.length] = docSize;
+            posPointers[docFrequencies.length] = posSize;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (docOut != null) {
+                    docOut.close();
+                }
+                if (posOut != null) {
+                    posOut.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package main.compression;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Term dictionary stored as a minimal acyclic <b>finite state transducer</b> in one byte array.
+ * Maps every term to a non-negative int output (term ID or pointer to its postings).
+ * Common prefixes and common suffixes of terms are stored only once,
+ * and outputs are split along the arcs of a term's path: the output of a term
+ * is the sum of outputs of arcs on its path and of the final output of its last state.
+ * <p>
+ * FST is built from terms, added in sorted order (as they come out of merging SPIMI blocks).
+ * Every state is written to the byte array as soon as no more arcs can be added to it,
+ * unless the same state (with the same arcs, outputs and targets) was already written.
+ * <p>
+ * Each state is written like this:<br>
+ * <code>flags [finalOutput] (label output target)*</code><br>
+ * where flags contain the number of arcs and whether state is final, target is the address of arc's state
+ * and all numbers are written using variable byte encoding. Arcs are sorted by their labels.
+ * <p>
+ * Supports exact lookup, iteration over terms with specified prefix and over terms in a range,
+ * all of which go through the byte array without decoding the whole dictionary.
+ */
+public class FSTDictionary {
+
+    private byte[] bytes;
+    private int rootAddress;
+    private int nTerms;
+
+    private static final int FINAL_FLAG = 1;
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * Builds FST, which maps every term to its position in the array (term ID)
+     * @param terms array of unique terms sorted alphabetically
+     */
+    public FSTDictionary(String[] terms) {
+        Builder builder = new Builder();
+        for (int i = 0; i < terms.length; i++) {
+            builder.add(terms[i], i);
+        }
+        FSTDictionary fst = builder.finish();
+        this.bytes = fst.bytes;
+        this.rootAddress = fst.rootAddress;
+        this.nTerms = fst.nTerms;
+    }
+
+    private FSTDictionary(byte[] bytes, int rootAddress, int nTerms) {
+        this.bytes = bytes;
+        this.rootAddress = rootAddress;
+        this.nTerms = nTerms;
+    }
+
+    /**
+     * Recreates FST from the array, returned by {@link #toByteArray()}
+     * @param arr serialized FST
+     * @return FST
+     */
+    public static FSTDictionary fromByteArray(byte[] arr) {
+        int length = arr.length - TRAILER_SIZE;
+        byte[] fstBytes = new byte[length];
+        System.arraycopy(arr, 0, fstBytes, 0, length);
+        return new FSTDictionary(fstBytes, readInt(arr, length), readInt(arr, length + 4));
+    }
+
+    /**
+     * Serializes FST to byte array: states of FST followed by the root address and number of terms
+     * @return serialized FST
+     */
+    public byte[] toByteArray() {
+        byte[] arr = new byte[bytes.length + TRAILER_SIZE];
+        System.arraycopy(bytes, 0, arr, 0, bytes.length);
+        writeInt(arr, bytes.length, rootAddress);
+        writeInt(arr, bytes.length + 4, nTerms);
+        return arr;
+    }
+
+    private static void writeInt(byte[] arr, int pos, int num) {
+        arr[pos] = (byte) (num >>> 24);
+        arr[pos + 1] = (byte) (num >>> 16);
+        arr[pos + 2] = (byte) (num >>> 8);
+        arr[pos + 3] = (byte) num;
+    }
+
+    private static int readInt(byte[] arr, int pos) {
+        return ((arr[pos] & 0xFF) << 24) | ((arr[pos + 1] & 0xFF) << 16)
+                | ((arr[pos + 2] & 0xFF) << 8) | (arr[pos + 3] & 0xFF);
+    }
+
+    /**
+     * @return number of terms in dictionary
+     */
+    public int getnTerms() {
+        return nTerms;
+    }
+
+    /**
+     * @return number of bytes FST takes up
+     */
+    public int getSizeInBytes() {
+        return bytes.length;
+    }
+
+    /**
+     * Returns output (term ID) of the term
+     * @param term term to find
+     * @return output of the term or -1 if it is not in dictionary
+     */
+    public int get(String term) {
+        int address = rootAddress;
+        int output = 0;
+        for (int i = 0, len = term.length(); i < len; i++) {
+            char chr = term.charAt(i);
+            int pos = address;
+            int flags = VariableByte.read(bytes, pos);
+            pos = VariableByte.skip(bytes, pos);
+            if ((flags & FINAL_FLAG) != 0) {
+                pos = VariableByte.skip(bytes, pos);
+            }
+            boolean found = false;
+            for (int nArcs = flags >>> 1; nArcs > 0; nArcs--) {
+                int label = VariableByte.read(bytes, pos);
+                pos = VariableByte.skip(bytes, pos);
+                if (label == chr) {
+                    output += VariableByte.read(bytes, pos);
+                    address = VariableByte.read(bytes, VariableByte.skip(bytes, pos));
+                    found = true;
+                    break;
+                } else if (label > chr) {
+                    // arcs are sorted
+                    break;
+                }
+                pos = VariableByte.skip(bytes, VariableByte.skip(bytes, pos));
+            }
+            if (!found) {
+                return -1;
+            }
+        }
+        int flags = VariableByte.read(bytes, address);
+        if ((flags & FINAL_FLAG) == 0) {
+            return -1;
+        }
+        return output + VariableByte.read(bytes, VariableByte.skip(bytes, address));
+    }
+
+    /**
+     * Returns cursor over all terms, which start with prefix, in sorted order
+     * @param prefix prefix of terms
+     * @return cursor over terms
+     */
+    public Cursor prefixCursor(String prefix) {
+        Cursor cursor = new Cursor(null);
+        int address = rootAddress;
+        int output = 0;
+        for (int i = 0, len = prefix.length(); i < len; i++) {
+            char chr = prefix.charAt(i);
+            cursor.push(address, output, i, true);
+            if (!cursor.seekArc(chr) || cursor.arcLabel != chr) {
+                // no term starts with prefix
+                cursor.clear();
+                return cursor;
+            }
+            cursor.path[i] = chr;
+            address = cursor.arcTarget;
+            output = cursor.arcOutput;
+            cursor.pop();
+        }
+        cursor.push(address, output, prefix.length(), false);
+        return cursor;
+    }
+
+    /**
+     * Returns cursor over all terms from the range in sorted order
+     * @param from the smallest term of the range (inclusive), null means no lower bound
+     * @param to the end of the range (exclusive), null means no upper bound
+     * @return cursor over terms
+     */
+    public Cursor rangeCursor(String from, String to) {
+        Cursor cursor = new Cursor(to);
+        if (from == null) {
+            cursor.push(rootAddress, 0, 0, false);
+            return cursor;
+        }
+        // go along the path of from, leaving states on the stack, so that iteration continues
+        // from the arcs greater than from's chars
+        int address = rootAddress;
+        int output = 0;
+        for (int i = 0, len = from.length(); i < len; i++) {
+            char chr = from.charAt(i);
+            // state's own term is a prefix of from, so it is less than from
+            cursor.push(address, output, i, true);
+            if (!cursor.seekArc(chr) || cursor.arcLabel != chr) {
+                // all terms with the rest of arcs are greater than from
+                return cursor;
+            }
+            cursor.consumeArc();
+            cursor.path[i] = chr;
+            address = cursor.arcTarget;
+            output = cursor.arcOutput;
+        }
+        cursor.push(address, output, from.length(), false);
+        return cursor;
+    }
+
+    /**
+     * Returns lazy Iterable over all terms, which start with prefix, in sorted order
+     * @param prefix prefix of terms
+     * @return Iterable over terms
+     */
+    public Iterable<String> prefixSearch(final String prefix) {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new TermIterator(prefixCursor(prefix));
+            }
+        };
+    }
+
+    /**
+     * Returns lazy Iterable over all terms from the range in sorted order
+     * @param from the smallest term of the range (inclusive), null means no lower bound
+     * @param to the end of the range (exclusive), null means no upper bound
+     * @return Iterable over terms
+     */
+    public Iterable<String> rangeSearch(final String from, final String to) {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new TermIterator(rangeCursor(from, to));
+            }
+        };
+    }
+
+    /**
+     * Depth-first traversal of FST, which returns terms in sorted order.
+     * Keeps the current term in one char buffer and creates a String only when asked for it.
+     */
+    public class Cursor {
+
+        private char[] path = new char[16];
+        private int termLength;
+        private int termOutput;
+        /** the end of the range (exclusive) or null */
+        private String to;
+
+        // stack of states, which are being traversed
+        private int[] addresses = new int[16];
+        private int[] outputs = new int[16];
+        private int[] depths = new int[16];
+        /** position of the next arc to read */
+        private int[] arcPositions = new int[16];
+        private int[] arcsLeft = new int[16];
+        /** whether the state's own term was already returned (or should not be) */
+        private boolean[] finalChecked = new boolean[16];
+        private int stackSize;
+
+        // the last read arc
+        private int arcLabel;
+        private int arcOutput;
+        private int arcTarget;
+        private int arcEnd;
+
+        private Cursor(String to) {
+            this.to = to;
+            this.stackSize = 0;
+        }
+
+        /**
+         * Moves to the next term
+         * @return false if there are no more terms
+         */
+        public boolean next() {
+            while (stackSize > 0) {
+                int top = stackSize - 1;
+                if (!finalChecked[top]) {
+                    finalChecked[top] = true;
+                    if (isFinal(top)) {
+                        termLength = depths[top];
+                        termOutput = outputs[top] + finalOutput(top);
+                        if (to != null && compareTermTo(to) >= 0) {
+                            clear();
+                            return false;
+                        }
+                        return true;
+                    }
+                }
+                if (arcsLeft[top] == 0) {
+                    pop();
+                    continue;
+                }
+                readArc(top);
+                consumeArc();
+                path[depths[top]] = (char) arcLabel;
+                push(arcTarget, arcOutput, depths[top] + 1, false);
+            }
+            return false;
+        }
+
+        /**
+         * @return current term
+         */
+        public String getTerm() {
+            return new String(path, 0, termLength);
+        }
+
+        /**
+         * @return output (term ID) of the current term
+         */
+        public int getOutput() {
+            return termOutput;
+        }
+
+        private int compareTermTo(String str) {
+            int len = Math.min(termLength, str.length());
+            for (int i = 0; i < len; i++) {
+                if (path[i] != str.charAt(i)) {
+                    return path[i] - str.charAt(i);
+                }
+            }
+            return termLength - str.length();
+        }
+
+        private boolean isFinal(int i) {
+            return (VariableByte.read(bytes, addresses[i]) & FINAL_FLAG) != 0;
+        }
+
+        private int finalOutput(int i) {
+            return VariableByte.read(bytes, VariableByte.skip(bytes, addresses[i]));
+        }
+
+        private void push(int address, int output, int depth, boolean skipFinal) {
+            if (stackSize == addresses.length) {
+                int newSize = stackSize * 2;
+                addresses = Arrays.copyOf(addresses, newSize);
+                outputs = Arrays.copyOf(outputs, newSize);
+                depths = Arrays.copyOf(depths, newSize);
+                arcPositions = Arrays.copyOf(arcPositions, newSize);
+                arcsLeft = Arrays.copyOf(arcsLeft, newSize);
+                finalChecked = Arrays.copyOf(finalChecked, newSize);
+            }
+            ensurePathCapacity(depth + 1);
+            int pos = address;
+            int flags = VariableByte.read(bytes, pos);
+            pos = VariableByte.skip(bytes, pos);
+            if ((flags & FINAL_FLAG) != 0) {
+                pos = VariableByte.skip(bytes, pos);
+            }
+            addresses[stackSize] = address;
+            outputs[stackSize] = output;
+            depths[stackSize] = depth;
+            arcPositions[stackSize] = pos;
+            arcsLeft[stackSize] = flags >>> 1;
+            finalChecked[stackSize] = skipFinal;
+            stackSize++;
+        }
+
+        private void pop() {
+            stackSize--;
+        }
+
+        private void clear() {
+            stackSize = 0;
+        }
+
+        private void ensurePathCapacity(int length) {
+            if (path.length < length) {
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+            }
+        }
+
+        /**
+         * Reads the next arc of the state on top of the stack without consuming it
+         */
+        private void readArc(int top) {
+            int pos = arcPositions[top];
+            arcLabel = VariableByte.read(bytes, pos);
+            pos = VariableByte.skip(bytes, pos);
+            arcOutput = outputs[top] + VariableByte.read(bytes, pos);
+            pos = VariableByte.skip(bytes, pos);
+            arcTarget = VariableByte.read(bytes, pos);
+            arcEnd = VariableByte.skip(bytes, pos);
+        }
+
+        /**
+         * Marks the last read arc of the state on top of the stack as traversed
+         */
+        private void consumeArc() {
+            int top = stackSize - 1;
+            arcPositions[top] = arcEnd;
+            arcsLeft[top]--;
+        }
+
+        /**
+         * Skips arcs of the state on top of the stack, which labels are less than chr,
+         * and reads the first arc with label greater or equal to chr (without consuming it)
+         * @return false if there is no such arc
+         */
+        private boolean seekArc(char chr) {
+            int top = stackSize - 1;
+            while (arcsLeft[top] > 0) {
+                readArc(top);
+                if (arcLabel >= chr) {
+                    return true;
+                }
+                consumeArc();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Adapts Cursor to Iterator over terms
+     */
+    private static class TermIterator implements Iterator<String> {
+
+        private Cursor cursor;
+        private boolean hasNext;
+
+        private TermIterator(Cursor cursor) {
+            this.cursor = cursor;
+            this.hasNext = cursor.next();
+        }
+
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        public String next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            String term = cursor.getTerm();
+            hasNext = cursor.next();
+            return term;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Builds FST from terms, added in sorted order.
+     * States on the path of the last added term (frontier) are kept uncompiled,
+     * and when the next term diverges from it, states after the common prefix are compiled.
+     */
+    public static class Builder {
+
+        private byte[] bytes = new byte[1024];
+        private int size = 0;
+        /** compiled states, so that equal states are written only once */
+        private HashMap<StateKey, Integer> compiled = new HashMap<StateKey, Integer>();
+        private State[] frontier = new State[16];
+        private String prevTerm = null;
+        private int nTerms = 0;
+
+        public Builder() {
+            for (int i = 0; i < frontier.length; i++) {
+                frontier[i] = new State();
+            }
+        }
+
+        /**
+         * Adds term to FST
+         * @param term term, which should be greater than all added terms
+         * @param output non-negative output of the term
+         */
+        public void add(String term, int output) {
+            if (output < 0) {
+                throw new IllegalArgumentException("Output should be non-negative, got " + output);
+            }
+            int prefixLength = 0;
+            if (prevTerm != null) {
+                if (prevTerm.compareTo(term) >= 0) {
+                    throw new IllegalArgumentException("Terms should be added in sorted order without duplicates: "
+                            + prevTerm + ", " + term);
+                }
+                int maxLength = Math.min(prevTerm.length(), term.length());
+                while (prefixLength < maxLength && prevTerm.charAt(prefixLength) == term.charAt(prefixLength)) {
+                    prefixLength++;
+                }
+                // states after common prefix will not get any more arcs
+                compileFrontier(prefixLength);
+            }
+
+            int length = term.length();
+            if (frontier.length <= length) {
+                int oldLength = frontier.length;
+                frontier = Arrays.copyOf(frontier, Math.max(length + 1, oldLength * 2));
+                for (int i = oldLength; i < frontier.length; i++) {
+                    frontier[i] = new State();
+                }
+            }
+            for (int i = prefixLength; i < length; i++) {
+                frontier[i].addArc(term.charAt(i));
+                frontier[i + 1].clear();
+            }
+            frontier[length].isFinal = true;
+
+            // push outputs of the common prefix, so that each arc keeps the common part of outputs
+            for (int i = 0; i < prefixLength; i++) {
+                State state = frontier[i];
+                int arcOutput = state.outputs[state.nArcs - 1];
+                int common = Math.min(arcOutput, output);
+                int rest = arcOutput - common;
+                state.outputs[state.nArcs - 1] = common;
+                if (rest != 0) {
+                    frontier[i + 1].prependOutput(rest);
+                }
+                output -= common;
+            }
+            if (prefixLength < length) {
+                State state = frontier[prefixLength];
+                state.outputs[state.nArcs - 1] = output;
+            } else {
+                frontier[length].finalOutput = output;
+            }
+
+            prevTerm = term;
+            nTerms++;
+        }
+
+        /**
+         * Compiles all remaining states and returns FST
+         * @return built FST
+         */
+        public FSTDictionary finish() {
+            if (prevTerm != null) {
+                compileFrontier(0);
+            }
+            int rootAddress = compile(frontier[0]);
+            byte[] fstBytes = new byte[size];
+            System.arraycopy(bytes, 0, fstBytes, 0, size);
+            return new FSTDictionary(fstBytes, rootAddress, nTerms);
+        }
+
+        /**
+         * Compiles states of frontier deeper than depth and links them to their parents
+         */
+        private void compileFrontier(int depth) {
+            for (int i = prevTerm.length(); i > depth; i--) {
+                State parent = frontier[i - 1];
+                parent.targets[parent.nArcs - 1] = compile(frontier[i]);
+            }
+        }
+
+        /**
+         * Writes state to byte array, unless equal state is already written
+         * @return address of the state
+         */
+        private int compile(State state) {
+            StateKey key = new StateKey(state);
+            Integer address = compiled.get(key);
+            if (address != null) {
+                return address;
+            }
+            int stateAddress = size;
+            ensureCapacity(5 * (2 + 3 * state.nArcs));
+            size = VariableByte.write(bytes, size, (state.nArcs << 1) | (state.isFinal ? FINAL_FLAG : 0));
+            if (state.isFinal) {
+                size = VariableByte.write(bytes, size, state.finalOutput);
+            }
+            for (int i = 0; i < state.nArcs; i++) {
+                size = VariableByte.write(bytes, size, state.labels[i]);
+                size = VariableByte.write(bytes, size, state.outputs[i]);
+                size = VariableByte.write(bytes, size, state.targets[i]);
+            }
+            compiled.put(key, stateAddress);
+            return stateAddress;
+        }
+
+        private void ensureCapacity(int nBytes) {
+            if (size + nBytes > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + nBytes, bytes.length * 2));
+            }
+        }
+    }
+
+    /**
+     * State, which is not yet written to byte array
+     */
+    private static class State {
+        private int nArcs;
+        private char[] labels = new char[4];
+        private int[] outputs = new int[4];
+        private int[] targets = new int[4];
+        private boolean isFinal;
+        private int finalOutput;
+
+        private void clear() {
+            nArcs = 0;
+            isFinal = false;
+            finalOutput = 0;
+        }
+
+        private void addArc(char label) {
+            if (nArcs == labels.length) {
+                labels = Arrays.copyOf(labels, nArcs * 2);
+                outputs = Arrays.copyOf(outputs, nArcs * 2);
+                targets = Arrays.copyOf(targets, nArcs * 2);
+            }
+            labels[nArcs] = label;
+            outputs[nArcs] = 0;
+            targets[nArcs] = -1;
+            nArcs++;
+        }
+
+        /**
+         * Adds output to all arcs and to the final output of the state
+         */
+        private void prependOutput(int output) {
+            for (int i = 0; i < nArcs; i++) {
+                outputs[i] += output;
+            }
+            if (isFinal) {
+                finalOutput += output;
+            }
+        }
+    }
+
+    /**
+     * Everything that defines a compiled state: flags, final output, labels, outputs and targets of arcs
+     */
+    private static class StateKey {
+        private int[] data;
+        private int hash;
+
+        private StateKey(State state) {
+            data = new int[3 + 3 * state.nArcs];
+            data[0] = state.isFinal ? 1 : 0;
+            data[1] = state.finalOutput;
+            data[2] = state.nArcs;
+            for (int i = 0; i < state.nArcs; i++) {
+                data[3 + 3 * i] = state.labels[i];
+                data[4 + 3 * i] = state.outputs[i];
+                data[5 + 3 * i] = state.targets[i];
+            }
+            hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateKey && Arrays.equals(data, ((StateKey) obj).data);
+        }
+    }
+}
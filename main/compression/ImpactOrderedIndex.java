@@ -0,0 +1,265 @@
+package main.compression;
+
+import main.BM25;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Stores posting lists grouped by impact, so that the most important postings of all terms are read first.
+ * <p>
+ * Impact of a posting is its BM25 score (idf * weight) quantized to an integer from 1 to {@link #MAX_IMPACT}
+ * with one scale for all terms, so impacts of different terms can be added.
+ * Postings of a term are split into segments of equal impact, sorted by impact in descending order,
+ * IDs in a segment are sorted and stored as differences in variable byte encoding.
+ * <p>
+ * List of a term starts with the number of segments and impact, number of documents and length in bytes
+ * of each segment, followed by the segments. The file is read through memory mapping in chunks,
+ * so it may be larger than 2 GB.
+ */
+public class ImpactOrderedIndex {
+
+    public static final int MAX_IMPACT = 255;
+
+    private File file;
+    /** position of each term's list in the file, the last element is the file's length */
+    private long[] pointers;
+    /** score, which is quantized to MAX_IMPACT */
+    private float maxScore;
+    private MappedFile mapped;
+
+    /**
+     * Writes postings of the index to the file in impact order.
+     * Idf is given separately, because the index may be pruned, and then its document frequencies
+     * are smaller than those of the collection.
+     *
+     * @param index    index with term frequencies
+     * @param scorer   BM25 of the collection
+     * @param idfs     idf of each term in the collection
+     * @param filepath filepath to the new index
+     */
+    public ImpactOrderedIndex(CompressedIndex index, BM25 scorer, float[] idfs, String filepath) {
+        this.file = new File(filepath);
+        this.pointers = new long[index.size() + 1];
+        for (int termID = 0; termID < index.size(); termID++) {
+            maxScore = Math.max(maxScore, idfs[termID] * index.getMaxWeight(termID));
+        }
+        writeIndex(index, scorer, idfs);
+    }
+
+    /**
+     * @return number of terms in the index
+     */
+    public int size() {
+        return pointers.length - 1;
+    }
+
+    /**
+     * @param score BM25 score of a posting
+     * @return impact from 1 to MAX_IMPACT
+     */
+    public int quantize(float score) {
+        int impact = Math.round(score / maxScore * MAX_IMPACT);
+        return Math.max(1, Math.min(MAX_IMPACT, impact));
+    }
+
+    /**
+     * @return score, which corresponds to impact 1
+     */
+    public float getImpactUnit() {
+        return maxScore / MAX_IMPACT;
+    }
+
+    /**
+     * Reads segments of the term
+     *
+     * @param termID id of the term
+     * @return iterator over segments in order of decreasing impact
+     */
+    public SegmentIterator getSegments(int termID) {
+        return new SegmentIterator(termID);
+    }
+
+    /**
+     * @return size of the file in bytes
+     */
+    public long getSizeInBytes() {
+        return file.length();
+    }
+
+    /**
+     * Iterates over segments of one term, the header is read at once and documents of a segment on request
+     */
+    public class SegmentIterator {
+
+        private MappedFile.Cursor in;
+        private int[] impacts;
+        private int[] counts;
+        /** position of each segment in the file */
+        private long[] starts;
+        private int segment;
+
+        private SegmentIterator(int termID) {
+            in = getMapped().cursor(pointers[termID]);
+            int nSegments = in.read();
+            impacts = new int[nSegments];
+            counts = new int[nSegments];
+            starts = new long[nSegments];
+            int[] lengths = new int[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                impacts[i] = in.read();
+                counts[i] = in.read();
+                lengths[i] = in.read();
+            }
+            long start = in.position();
+            for (int i = 0; i < nSegments; i++) {
+                starts[i] = start;
+                start += lengths[i];
+            }
+            segment = -1;
+        }
+
+        /**
+         * @return number of segments
+         */
+        public int size() {
+            return impacts.length;
+        }
+
+        /**
+         * Moves to the next segment
+         *
+         * @return false if there are no more segments
+         */
+        public boolean next() {
+            return ++segment < impacts.length;
+        }
+
+        public int getImpact() {
+            return impacts[segment];
+        }
+
+        /**
+         * @param i number of the segment
+         * @return impact of the segment
+         */
+        public int getImpact(int i) {
+            return impacts[i];
+        }
+
+        /**
+         * @return number of documents in the current segment
+         */
+        public int getCount() {
+            return counts[segment];
+        }
+
+        /**
+         * @param i number of the segment
+         * @return number of documents in the segment
+         */
+        public int getCount(int i) {
+            return counts[i];
+        }
+
+        /**
+         * @return sorted IDs of the current segment
+         */
+        public int[] getDocIDs() {
+            return getDocIDs(segment);
+        }
+
+        /**
+         * @param i number of the segment
+         * @return sorted IDs of the segment
+         */
+        public int[] getDocIDs(int i) {
+            in.position(starts[i]);
+            int[] IDs = new int[counts[i]];
+            int ID = 0;
+            for (int j = 0; j < IDs.length; j++) {
+                ID += in.read();
+                IDs[j] = ID;
+            }
+            return IDs;
+        }
+    }
+
+    private MappedFile getMapped() {
+        if (mapped == null) {
+            mapped = new MappedFile(file);
+        }
+        return mapped;
+    }
+
+    private void writeIndex(CompressedIndex index, BM25 scorer, float[] idfs) {
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            // number of written bytes, streams count them only in ints
+            long size = 0;
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            ByteArrayOutputStream segments = new ByteArrayOutputStream();
+            // documents with each impact, IDs of each impact are placed in order by counting sort
+            int[] counts = new int[MAX_IMPACT + 2];
+            for (int termID = 0; termID < index.size(); termID++) {
+                pointers[termID] = size;
+                int[] IDs = index.getPostingList(termID);
+                int[] tfs = index.getFrequencies(termID);
+                float idf = idfs[termID];
+                int[] impacts = new int[IDs.length];
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < IDs.length; i++) {
+                    impacts[i] = quantize(scorer.score(idf, tfs[i], IDs[i]));
+                    counts[impacts[i]]++;
+                }
+                // starts of impacts in the descending order
+                int[] starts = new int[MAX_IMPACT + 2];
+                int nSegments = 0;
+                for (int impact = MAX_IMPACT, start = 0; impact > 0; impact--) {
+                    starts[impact] = start;
+                    start += counts[impact];
+                    if (counts[impact] > 0) {
+                        nSegments++;
+                    }
+                }
+                int[] sorted = new int[IDs.length];
+                for (int i = 0; i < IDs.length; i++) {
+                    sorted[starts[impacts[i]]++] = IDs[i];
+                }
+                header.reset();
+                segments.reset();
+                VariableByte.write(header, nSegments);
+                for (int impact = MAX_IMPACT, start = 0; impact > 0; impact--) {
+                    if (counts[impact] == 0) {
+                        continue;
+                    }
+                    int segmentStart = segments.size();
+                    int prevID = 0;
+                    for (int i = start; i < start + counts[impact]; i++) {
+                        VariableByte.write(segments, sorted[i] - prevID);
+                        prevID = sorted[i];
+                    }
+                    start += counts[impact];
+                    VariableByte.write(header, impact);
+                    VariableByte.write(header, counts[impact]);
+                    VariableByte.write(header, segments.size() - segmentStart);
+                }
+                header.writeTo(out);
+                segments.writeTo(out);
+                size += header.size() + segments.size();
+            }
+            pointers[index.size()] = size;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
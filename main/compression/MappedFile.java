@@ -0,0 +1,205 @@
+package main.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a file of any size.
+ * <p>
+ * One mapping can not be larger than 2 GB, so the file is mapped in chunks of {@link #CHUNK_SIZE} bytes,
+ * and read through a {@link Cursor}, which has a long position and moves to the next chunk
+ * when the current one ends, even in the middle of a number.
+ */
+class MappedFile {
+
+    /** default size of every chunk, except the last one */
+    static final int CHUNK_SIZE = 1 << 30;
+    /** maximum number of bytes of an integer in variable byte encoding */
+    private static final int MAX_NUMBER_SIZE = 5;
+
+    private File file;
+    private int chunkSize;
+    private ByteBuffer[] chunks;
+    private long length;
+
+    /**
+     * Maps the whole file, chunks are read by the operating system only when they are accessed
+     *
+     * @param file file to map
+     */
+    MappedFile(File file) {
+        this(file, CHUNK_SIZE);
+    }
+
+    /**
+     * @param file      file to map
+     * @param chunkSize size of every chunk, except the last one
+     */
+    MappedFile(File file, int chunkSize) {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            length = in.length();
+            int nChunks = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+            chunks = new ByteBuffer[nChunks];
+            for (int i = 0; i < nChunks; i++) {
+                long start = (long) i * chunkSize;
+                // the mapping stays valid after the file is closed
+                chunks[i] = in.getChannel().map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(chunkSize, length - start));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read index file " + file.getPath(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param position position in the file
+     * @return new cursor at the position
+     */
+    Cursor cursor(long position) {
+        Cursor cursor = new Cursor();
+        cursor.position(position);
+        return cursor;
+    }
+
+    /**
+     * Reads numbers in variable byte encoding and raw bytes from any position of the file.
+     * Each cursor has its own views of the chunks, so cursors do not affect each other.
+     */
+    class Cursor {
+
+        private ByteBuffer[] views = new ByteBuffer[chunks.length];
+        private int chunkIndex;
+        private ByteBuffer chunk;
+        private byte[] number = new byte[MAX_NUMBER_SIZE];
+
+        private Cursor() {
+        }
+
+        long position() {
+            return (long) chunkIndex * chunkSize + chunk.position();
+        }
+
+        void position(long position) {
+            if (position < 0 || position > length) {
+                throw new IllegalArgumentException("Position is outside of file " + file.getPath() + ": " + position);
+            }
+            // the end of the file, which is the end of the last chunk, stays in it
+            chunkIndex = (int) Math.min(position / chunkSize, chunks.length - 1);
+            if (views[chunkIndex] == null) {
+                views[chunkIndex] = chunks[chunkIndex].duplicate();
+            }
+            chunk = views[chunkIndex];
+            chunk.position((int) (position - (long) chunkIndex * chunkSize));
+        }
+
+        /**
+         * Reads integer and moves after it
+         */
+        int read() {
+            if (chunk.remaining() >= MAX_NUMBER_SIZE) {
+                return VariableByte.read(chunk);
+            }
+            long start = position();
+            int size = copyNumber();
+            position(start + size);
+            return VariableByte.read(number, 0);
+        }
+
+        /**
+         * Moves after the integer, which starts at the current position
+         */
+        void skip() {
+            if (chunk.remaining() >= MAX_NUMBER_SIZE) {
+                VariableByte.skip(chunk);
+                return;
+            }
+            position(position() + copyNumber());
+        }
+
+        /**
+         * Reads 4 bytes of a big-endian integer and moves after them
+         */
+        int readInt() {
+            if (chunk.remaining() >= 4) {
+                return chunk.getInt();
+            }
+            int res = 0;
+            for (int i = 0; i < 4; i++) {
+                res = (res << 8) | readByte();
+            }
+            return res;
+        }
+
+        /**
+         * @return the next byte from 0 to 255, or -1 at the end of the file
+         */
+        private int readByte() {
+            if (!chunk.hasRemaining()) {
+                if (position() == length) {
+                    return -1;
+                }
+                // move to the start of the next chunk
+                position(position());
+            }
+            return chunk.get() & 0xFF;
+        }
+
+        /**
+         * @return stream of bytes from the current position, reading it moves the cursor
+         */
+        InputStream asInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return readByte();
+                }
+
+                @Override
+                public int read(byte[] bytes, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (readByte() < 0) {
+                        return -1;
+                    }
+                    // the byte is read again with the rest of the current chunk
+                    chunk.position(chunk.position() - 1);
+                    int n = Math.min(len, chunk.remaining());
+                    chunk.get(bytes, off, n);
+                    return n;
+                }
+            };
+        }
+
+        /**
+         * Copies bytes of the number, which may continue in the next chunk, without moving
+         *
+         * @return number of bytes of the number
+         */
+        private int copyNumber() {
+            long start = position();
+            int size = (int) Math.min(MAX_NUMBER_SIZE, length - start);
+            for (int i = 0; i < size; i++) {
+                long pos = start + i;
+                number[i] = chunks[(int) (pos / chunkSize)].get((int) (pos % chunkSize));
+            }
+            return VariableByte.skip(number, 0);
+        }
+    }
+}
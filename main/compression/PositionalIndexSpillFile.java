@@ -0,0 +1,186 @@
+package main.compression;
+
+import main.indexes.PositionalIndex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Append-only file, to which positional indexes are moved to free memory while a dictionary is built.
+ * <p>
+ * Indexes are written one after another in a compact binary format: number of documents,
+ * then for each document the ID difference, number of positions and position differences,
+ * all in variable byte encoding. An offset table in memory maps entry number to the index position in the file.
+ * Indexes are read back through memory mapping of the file.
+ * <p>
+ * When the object is serialized, its path and offset table are kept,
+ * so after deserialization the file is mapped again on the first read. Nothing can be appended then.
+ */
+public class PositionalIndexSpillFile implements Closeable, Serializable {
+
+    private File file;
+    // null after deserialization
+    private transient DataOutputStream out;
+    /** position of each entry in the file, the last used element is the end of written data */
+    private long[] offsets;
+    private int nEntries;
+    private transient MappedRegion mapped;
+
+    private static final int INITIAL_ARRAY_SIZE = 10;
+
+    /**
+     * Creates empty spill file, an existing file is overwritten
+     *
+     * @param dir  directory of the file
+     * @param name name of the file
+     * @throws IOException if the file could not be created
+     */
+    public PositionalIndexSpillFile(String dir, String name) throws IOException {
+        this.file = new File(dir, name);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        this.offsets = new long[INITIAL_ARRAY_SIZE + 1];
+        this.nEntries = 0;
+    }
+
+    /**
+     * Part of the file, which is mapped to memory
+     */
+    private static class MappedRegion {
+        private long start;
+        private long end;
+        private ByteBuffer buffer;
+    }
+
+    /**
+     * Writes the index to the end of the file
+     *
+     * @param index index to write
+     * @return number of the entry, which is used to read the index back
+     * @throws IOException if the file could not be written
+     */
+    public int append(PositionalIndex index) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Spill file was deserialized and is read-only: " + file.getPath());
+        }
+        if (nEntries + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        VariableByte.write(out, index.size());
+        long nBytes = VariableByte.size(index.size());
+        int prevID = 0;
+        PositionalIndex.NodeIterator itr = index.nodeIterator();
+        while (itr.hasNext()) {
+            PositionalIndex.Node node = itr.next();
+            int[] positions = node.getPositions();
+            nBytes += VariableByte.write(out, node.getID() - prevID);
+            nBytes += VariableByte.write(out, positions.length);
+            int prevPos = 0;
+            for (int pos : positions) {
+                nBytes += VariableByte.write(out, pos - prevPos);
+                prevPos = pos;
+            }
+            prevID = node.getID();
+        }
+        offsets[nEntries + 1] = offsets[nEntries] + nBytes;
+        return nEntries++;
+    }
+
+    /**
+     * Reads the index, which was written to the file
+     *
+     * @param entry number of the entry, returned by {@link #append(PositionalIndex)}
+     * @return new index with skips
+     * @throws IOException if the file could not be read
+     */
+    public PositionalIndex read(int entry) throws IOException {
+        if (entry < 0 || entry >= nEntries) {
+            throw new IllegalArgumentException("No such entry in spill file " + file.getPath() + ": " + entry);
+        }
+        ByteBuffer in = map(offsets[entry], offsets[entry + 1]);
+        PositionalIndex index = new PositionalIndex();
+        int size = VariableByte.read(in);
+        int[] positions = new int[INITIAL_ARRAY_SIZE];
+        int ID = 0;
+        for (int i = 0; i < size; i++) {
+            ID += VariableByte.read(in);
+            int count = VariableByte.read(in);
+            if (count > positions.length) {
+                positions = new int[Math.max(count, positions.length * 2)];
+            }
+            int pos = 0;
+            for (int j = 0; j < count; j++) {
+                pos += VariableByte.read(in);
+                positions[j] = pos;
+            }
+            index.addLastNode(ID, positions, count);
+        }
+        index.addSkips();
+        return index;
+    }
+
+    /**
+     * @return number of indexes in the file
+     */
+    public int size() {
+        return nEntries;
+    }
+
+    /**
+     * @return number of written bytes
+     */
+    public long getSizeInBytes() {
+        return offsets[nEntries];
+    }
+
+    /**
+     * Returns buffer positioned at start, which contains bytes from start to end.
+     * The whole file is mapped, unless it is too large, then only the requested part is.
+     */
+    private ByteBuffer map(long start, long end) throws IOException {
+        if (mapped == null || start < mapped.start || end > mapped.end) {
+            if (out != null) {
+                out.flush();
+            }
+            mapped = new MappedRegion();
+            long written = offsets[nEntries];
+            mapped.start = (written <= Integer.MAX_VALUE) ? 0 : start;
+            mapped.end = (written <= Integer.MAX_VALUE) ? written : end;
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                mapped.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        mapped.start, mapped.end - mapped.start);
+            } finally {
+                raf.close();
+            }
+        }
+        ByteBuffer in = mapped.buffer.duplicate();
+        in.position((int) (start - mapped.start));
+        return in;
+    }
+
+    /**
+     * Closes the file for writing, written indexes can still be read
+     *
+     * @throws IOException if the file could not be flushed
+     */
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes the file and deletes it
+     *
+     * @throws IOException if the file could not be flushed
+     */
+    public void delete() throws IOException {
+        close();
+        mapped = null;
+        if (!file.delete()) {
+            System.err.println("Could not delete spill file " + file.getPath());
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package main.compression;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of non-negative integers (<b>Roaring bitmap</b>).
+ * <p>
+ * Integers are split in chunks by their higher 16 bits, and lower 16 bits of each chunk
+ * are stored in a container of one of three kinds, whichever is smaller:
+ * - 	array container: sorted array of values, for sparse chunks (up to 4096 values);
+ * - 	bitmap container: 2^16 bits, for dense chunks;
+ * - 	run container: pairs (start, length - 1) of consecutive values.
+ * Intersection and union of bitmap containers are done with bitwise operations on longs,
+ * array containers are merged or checked against the other container.
+ */
+public class RoaringBitmap implements Serializable {
+
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final int BITMAP_BYTES = BITMAP_WORDS * 8;
+
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+    private static final byte RUN = 2;
+
+    /** higher 16 bits of values in each container, sorted */
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    private RoaringBitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Builds bitmap from sorted values, choosing the smallest container for every chunk
+     *
+     * @param values sorted non-negative values without duplicates
+     * @param length number of values to take from the array
+     * @return bitmap with the values
+     */
+    public static RoaringBitmap fromSorted(int[] values, int length) {
+        RoaringBitmap bitmap = new RoaringBitmap(4);
+        char[] lows = new char[Math.min(length, 1 << 16)];
+        int i = 0;
+        while (i < length) {
+            int high = values[i] >>> 16;
+            int card = 0;
+            while (i < length && (values[i] >>> 16) == high) {
+                lows[card++] = (char) values[i++];
+            }
+            bitmap.append((char) high, Container.best(lows, card));
+        }
+        return bitmap;
+    }
+
+    private void append(char key, Container container) {
+        if (container.cardinality() == 0) {
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    /**
+     * @param value non-negative integer
+     * @return true if bitmap contains value
+     */
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Finds the next value without decoding the whole bitmap, so that lists can be iterated and advanced
+     *
+     * @param from non-negative integer
+     * @return the smallest value of bitmap, which is not less than from, or -1 if there is none
+     */
+    public int nextValue(int from) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (from >>> 16));
+        int low = from & 0xFFFF;
+        if (index < 0) {
+            // the chunk of from is empty, the next chunk starts from its smallest value
+            index = -index - 1;
+            low = 0;
+        }
+        for (; index < size; index++, low = 0) {
+            int value = containers[index].nextValue(low);
+            if (value >= 0) {
+                return (keys[index] << 16) | value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of values in bitmap
+     */
+    public int cardinality() {
+        int card = 0;
+        for (int i = 0; i < size; i++) {
+            card += containers[i].cardinality();
+        }
+        return card;
+    }
+
+    /**
+     * @return sorted values of bitmap
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            pos = containers[i].fill(values, pos, keys[i] << 16);
+        }
+        return values;
+    }
+
+    /**
+     * @param that bitmap to intersect with
+     * @return new bitmap with values contained in both bitmaps
+     */
+    public RoaringBitmap and(RoaringBitmap that) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(1, Math.min(this.size, that.size)));
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < that.size) {
+            if (this.keys[i] < that.keys[j]) {
+                i++;
+            } else if (this.keys[i] > that.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], Container.and(this.containers[i], that.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param that bitmap to unite with
+     * @return new bitmap with values contained in at least one of the bitmaps
+     */
+    public RoaringBitmap or(RoaringBitmap that) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(1, this.size + that.size));
+        int i = 0;
+        int j = 0;
+        while (i < this.size || j < that.size) {
+            if (j == that.size || (i < this.size && this.keys[i] < that.keys[j])) {
+                result.append(this.keys[i], this.containers[i]);
+                i++;
+            } else if (i == this.size || this.keys[i] > that.keys[j]) {
+                result.append(that.keys[j], that.containers[j]);
+                j++;
+            } else {
+                result.append(keys[i], Container.or(this.containers[i], that.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes bitmap in binary form: number of containers,
+     * then key, kind and content of each container
+     *
+     * @param out output to write to
+     * @throws IOException if output could not be written to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            containers[i].writeTo(out);
+        }
+    }
+
+    /**
+     * Reads bitmap written with {@link #writeTo(DataOutput)}
+     *
+     * @param in input to read from
+     * @return read bitmap
+     * @throws IOException if input could not be read
+     */
+    public static RoaringBitmap readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        RoaringBitmap bitmap = new RoaringBitmap(Math.max(1, size));
+        for (int i = 0; i < size; i++) {
+            char key = in.readChar();
+            bitmap.append(key, Container.readFrom(in));
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return number of bytes written by {@link #writeTo(DataOutput)}
+     */
+    public int getSizeInBytes() {
+        int bytes = 4;
+        for (int i = 0; i < size; i++) {
+            bytes += 2 + containers[i].getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Container of lower 16 bits of values from one chunk
+     */
+    private abstract static class Container implements Serializable {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /**
+         * @param low lower bits, from 0 to 2^16 - 1
+         * @return the smallest value of container, which is not less than low, or -1 if there is none
+         */
+        abstract int nextValue(int low);
+
+        /**
+         * Writes values to array
+         *
+         * @param arr  array to write to
+         * @param pos  position to start from
+         * @param high higher bits of values
+         * @return position after the last written value
+         */
+        abstract int fill(int[] arr, int pos, int high);
+
+        /**
+         * @return new array of bitmap words with the values of container
+         */
+        abstract long[] toWords();
+
+        /**
+         * @return number of bytes the container is written in, including its kind
+         */
+        abstract int getSizeInBytes();
+
+        abstract void writeTo(DataOutput out) throws IOException;
+
+        static Container readFrom(DataInput in) throws IOException {
+            byte kind = in.readByte();
+            if (kind == BITMAP) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] = in.readLong();
+                }
+                return new BitmapContainer(words);
+            }
+            int n = in.readChar() + 1;
+            char[] values = new char[(kind == RUN) ? 2 * n : n];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readChar();
+            }
+            return (kind == RUN) ? new RunContainer(values, n) : new ArrayContainer(values, n);
+        }
+
+        /**
+         * Chooses the smallest kind of container for sorted values
+         */
+        static Container best(char[] lows, int card) {
+            int nRuns = 0;
+            for (int i = 0; i < card; i++) {
+                if (i == 0 || lows[i] != lows[i - 1] + 1) {
+                    nRuns++;
+                }
+            }
+            int arrayBytes = 2 * card;
+            int runBytes = 4 * nRuns;
+            if (runBytes < arrayBytes && runBytes < BITMAP_BYTES) {
+                char[] runs = new char[2 * nRuns];
+                int run = -1;
+                for (int i = 0; i < card; i++) {
+                    if (i == 0 || lows[i] != lows[i - 1] + 1) {
+                        run++;
+                        runs[2 * run] = lows[i];
+                    }
+                    runs[2 * run + 1] = (char) (lows[i] - runs[2 * run]);
+                }
+                return new RunContainer(runs, nRuns);
+            }
+            if (card <= MAX_ARRAY_SIZE) {
+                return new ArrayContainer(Arrays.copyOf(lows, card), card);
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < card; i++) {
+                words[lows[i] >>> 6] |= 1L << lows[i];
+            }
+            return new BitmapContainer(words);
+        }
+
+        /**
+         * Builds array or bitmap container from bitmap words, whichever is smaller
+         */
+        static Container fromWords(long[] words) {
+            int card = 0;
+            for (long word : words) {
+                card += Long.bitCount(word);
+            }
+            if (card > MAX_ARRAY_SIZE) {
+                return new BitmapContainer(words, card);
+            }
+            char[] values = new char[card];
+            int pos = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[pos++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, card);
+        }
+
+        static Container and(Container c1, Container c2) {
+            if (c1 instanceof ArrayContainer || c2 instanceof ArrayContainer) {
+                // check values of the smaller array against the other container
+                ArrayContainer array = (c1 instanceof ArrayContainer) ? (ArrayContainer) c1 : (ArrayContainer) c2;
+                Container other = (array == c1) ? c2 : c1;
+                if (other instanceof ArrayContainer && other.cardinality() < array.cardinality()) {
+                    Container tmp = array;
+                    array = (ArrayContainer) other;
+                    other = tmp;
+                }
+                char[] values = new char[array.card];
+                int card = 0;
+                for (int i = 0; i < array.card; i++) {
+                    if (other.contains(array.values[i])) {
+                        values[card++] = array.values[i];
+                    }
+                }
+                return new ArrayContainer(values, card);
+            }
+            long[] words = c1.toWords();
+            long[] words2 = (c2 instanceof BitmapContainer) ? ((BitmapContainer) c2).words : c2.toWords();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= words2[i];
+            }
+            return fromWords(words);
+        }
+
+        static Container or(Container c1, Container c2) {
+            if (c1 instanceof ArrayContainer && c2 instanceof ArrayContainer
+                    && c1.cardinality() + c2.cardinality() <= MAX_ARRAY_SIZE) {
+                ArrayContainer a1 = (ArrayContainer) c1;
+                ArrayContainer a2 = (ArrayContainer) c2;
+                char[] values = new char[a1.card + a2.card];
+                int card = 0;
+                int i = 0;
+                int j = 0;
+                while (i < a1.card || j < a2.card) {
+                    if (j == a2.card || (i < a1.card && a1.values[i] < a2.values[j])) {
+                        values[card++] = a1.values[i++];
+                    } else if (i == a1.card || a1.values[i] > a2.values[j]) {
+                        values[card++] = a2.values[j++];
+                    } else {
+                        values[card++] = a1.values[i++];
+                        j++;
+                    }
+                }
+                return new ArrayContainer(values, card);
+            }
+            long[] words = c1.toWords();
+            if (c2 instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) c2;
+                for (int i = 0; i < array.card; i++) {
+                    words[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                long[] words2 = (c2 instanceof BitmapContainer) ? ((BitmapContainer) c2).words : c2.toWords();
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= words2[i];
+                }
+            }
+            return fromWords(words);
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int card;
+
+        ArrayContainer(char[] values, int card) {
+            this.values = values;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, card, low) >= 0;
+        }
+
+        int nextValue(int low) {
+            int index = Arrays.binarySearch(values, 0, card, (char) low);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return (index < card) ? values[index] : -1;
+        }
+
+        int fill(int[] arr, int pos, int high) {
+            for (int i = 0; i < card; i++) {
+                arr[pos++] = high | values[i];
+            }
+            return pos;
+        }
+
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < card; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        int getSizeInBytes() {
+            return 3 + 2 * card;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeByte(ARRAY);
+            out.writeChar(card - 1);
+            for (int i = 0; i < card; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private long[] words;
+        private int card;
+
+        BitmapContainer(long[] words) {
+            this.words = words;
+            for (long word : words) {
+                card += Long.bitCount(word);
+            }
+        }
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        int nextValue(int low) {
+            int i = low >>> 6;
+            // bits of the first word, which are before low, are cleared
+            long word = words[i] & (-1L << low);
+            while (word == 0) {
+                if (++i == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[i];
+            }
+            return i * 64 + Long.numberOfTrailingZeros(word);
+        }
+
+        int fill(int[] arr, int pos, int high) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    arr[pos++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return pos;
+        }
+
+        long[] toWords() {
+            return words.clone();
+        }
+
+        int getSizeInBytes() {
+            return 1 + BITMAP_BYTES;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeByte(BITMAP);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static class RunContainer extends Container {
+        /** start and length - 1 of each run */
+        private char[] runs;
+        private int nRuns;
+
+        RunContainer(char[] runs, int nRuns) {
+            this.runs = runs;
+            this.nRuns = nRuns;
+        }
+
+        int cardinality() {
+            int card = 0;
+            for (int i = 0; i < nRuns; i++) {
+                card += runs[2 * i + 1] + 1;
+            }
+            return card;
+        }
+
+        boolean contains(char low) {
+            int run = lastRunBefore(low);
+            return run >= 0 && low - runs[2 * run] <= runs[2 * run + 1];
+        }
+
+        int nextValue(int low) {
+            int run = lastRunBefore(low);
+            if (run >= 0 && low - runs[2 * run] <= runs[2 * run + 1]) {
+                return low;
+            }
+            return (run + 1 < nRuns) ? runs[2 * (run + 1)] : -1;
+        }
+
+        /**
+         * @return the last run, which starts before or at low, or -1 if there is none
+         */
+        private int lastRunBefore(int low) {
+            int lo = 0;
+            int hi = nRuns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= low) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+        int fill(int[] arr, int pos, int high) {
+            for (int i = 0; i < nRuns; i++) {
+                for (int value = runs[2 * i], end = value + runs[2 * i + 1]; value <= end; value++) {
+                    arr[pos++] = high | value;
+                }
+            }
+            return pos;
+        }
+
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < nRuns; i++) {
+                for (int value = runs[2 * i], end = value + runs[2 * i + 1]; value <= end; value++) {
+                    words[value >>> 6] |= 1L << value;
+                }
+            }
+            return words;
+        }
+
+        int getSizeInBytes() {
+            return 3 + 4 * nRuns;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeByte(RUN);
+            out.writeChar(nRuns - 1);
+            for (int i = 0; i < 2 * nRuns; i++) {
+                out.writeChar(runs[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package main.compression;
+
+import main.BM25;
+import main.dictionary.DictionarySPIMI;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Writes a smaller copy of the index without postings, which contribute little to scores
+ * (term-based static pruning of Carmel et al.).
+ * <p>
+ * For every term z is the k-th highest BM25 score among its postings, and postings with score
+ * below epsilon * z are removed. Lists with at most k postings are kept whole.
+ * So the best k documents of every one-term query are not changed,
+ * and a document loses less than epsilon * z for each term of a longer query.
+ * <p>
+ * The report compares sizes of the indexes and estimates the loss of quality
+ * as the share of the total score of all postings, which was removed, by groups of document frequency.
+ */
+public class StaticPruning {
+
+    private CompressedIndex index;
+    private BM25 scorer;
+    private int k;
+    private float epsilon;
+    private CompressedIndex pruned;
+
+    // statistics of each group of terms, group is the number of decimal digits of document frequency
+    private static final int N_GROUPS = 10;
+    private int[] groupTerms = new int[N_GROUPS];
+    private long[] groupPostings = new long[N_GROUPS];
+    private long[] groupKept = new long[N_GROUPS];
+    private double[] groupScores = new double[N_GROUPS];
+    private double[] groupKeptScores = new double[N_GROUPS];
+
+    /**
+     * @param index   index to prune
+     * @param scorer  BM25 of the collection
+     * @param k       number of the best postings of a term, which score sets the term's threshold
+     * @param epsilon share of the k-th score, below which postings are removed, from 0 to 1
+     */
+    public StaticPruning(CompressedIndex index, BM25 scorer, int k, float epsilon) {
+        if (k <= 0 || epsilon < 0 || epsilon > 1) {
+            throw new IllegalArgumentException("Incorrect pruning parameters: k = " + k + ", epsilon = " + epsilon);
+        }
+        this.index = index;
+        this.scorer = scorer;
+        this.k = k;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Writes pruned postings as an uncompressed index next to the new one and compresses it
+     *
+     * @param filepath filepath to the pruned index
+     * @return pruned index, its document frequencies are those of the pruned lists
+     */
+    public CompressedIndex prune(String filepath) {
+        File uncompFile = new File(filepath + ".txt");
+        BufferedWriter out = null;
+        try {
+            out = new BufferedWriter(new FileWriter(uncompFile));
+            for (int termID = 0; termID < index.size(); termID++) {
+                pruneList(termID, out);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write file " + uncompFile.getPath());
+            return null;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        pruned = new CompressedIndex(uncompFile, index.size(), index.getnDocs(), scorer, filepath);
+        if (!uncompFile.delete()) {
+            System.err.println("Could not delete file " + uncompFile.getPath());
+        }
+        return pruned;
+    }
+
+    private void pruneList(int termID, Writer out) throws IOException {
+        int[] IDs = index.getPostingList(termID);
+        int[] tfs = index.getFrequencies(termID);
+        float idf = scorer.idf(index.getDocFrequency(termID));
+        float[] scores = new float[IDs.length];
+        for (int i = 0; i < IDs.length; i++) {
+            scores[i] = scorer.score(idf, tfs[i], IDs[i]);
+        }
+        float threshold = 0;
+        if (IDs.length > k) {
+            float[] sorted = Arrays.copyOf(scores, scores.length);
+            Arrays.sort(sorted);
+            threshold = epsilon * sorted[sorted.length - k];
+        }
+        int group = Math.min(N_GROUPS - 1, Integer.toString(IDs.length).length() - 1);
+        groupTerms[group]++;
+        groupPostings[group] += IDs.length;
+        for (int i = 0; i < IDs.length; i++) {
+            groupScores[group] += scores[i];
+            if (scores[i] >= threshold) {
+                out.write(IDs[i] + ":" + tfs[i] + " ");
+                groupKept[group]++;
+                groupKeptScores[group] += scores[i];
+            }
+        }
+    }
+
+    /**
+     * Writes sizes of the full and the pruned index and shares of kept postings and scores
+     *
+     * @param file file to write the report to
+     */
+    public void writeReport(File file) {
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            out.println("Static pruning: k = " + k + ", epsilon = " + epsilon);
+            long fullSize = index.getSizeInBytes();
+            long prunedSize = (pruned == null) ? 0 : pruned.getSizeInBytes();
+            out.println("Full index: " + fullSize + " bytes");
+            out.println("Pruned index: " + prunedSize + " bytes ("
+                    + percent(prunedSize, fullSize) + "% of the full index)");
+            long postings = 0;
+            long kept = 0;
+            double scores = 0;
+            double keptScores = 0;
+            for (int group = 0; group < N_GROUPS; group++) {
+                postings += groupPostings[group];
+                kept += groupKept[group];
+                scores += groupScores[group];
+                keptScores += groupKeptScores[group];
+            }
+            out.println("Postings kept: " + kept + " of " + postings + " (" + percent(kept, postings) + "%)");
+            out.println("Score kept: " + percent(keptScores, scores) + "%");
+            out.println();
+            out.println("Document frequency\tTerms\tPostings\tPostings kept, %\tScore kept, %");
+            for (int group = 0; group < N_GROUPS; group++) {
+                if (groupTerms[group] == 0) {
+                    continue;
+                }
+                out.println((long) Math.pow(10, group) + "+\t" + groupTerms[group] + "\t" + groupPostings[group] + "\t"
+                        + percent(groupKept[group], groupPostings[group]) + "\t"
+                        + percent(groupKeptScores[group], groupScores[group]));
+            }
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Could not open or create file");
+        }
+    }
+
+    private static String percent(double part, double whole) {
+        return String.format("%.2f", (whole == 0) ? 100 : 100 * part / whole);
+    }
+
+    public static void main(String[] args) {
+        File[] files = {
+                new File("files\\docs\\1.txt"),
+                new File("files\\docs\\2.txt"),
+                new File("files\\docs\\3.txt")
+        };
+        DictionarySPIMI dic = new DictionarySPIMI(files);
+        CompressedIndex index = dic.getPostings();
+        StaticPruning pruning = new StaticPruning(index, index.getScorer(), 10, 0.5f);
+        pruning.prune("files\\prunedIndex.bin");
+        pruning.writeReport(new File("files\\pruningReport.txt"));
+    }
+}
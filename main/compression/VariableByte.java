@@ -0,0 +1,120 @@
+package main.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable byte encoding of non-negative integers.
+ * A number is split into groups of 7 bits, the most significant group is written first,
+ * and the highest bit is set only in the last byte of a number
+ * (the same format <code>CompressedIndex</code> uses for ID differences).
+ * For example, 300 = 10 0101100 is written as <code>00000010 10101100</code>.
+ */
+public class VariableByte {
+
+    private static final int BYTE_CAPACITY = 7;
+    private static final int PAYLOAD_MASK = 0x7F;
+    private static final int TERMINATOR = 0x80;
+
+    private VariableByte() {
+    }
+
+    /**
+     * Counts number of bytes needed to store specified integer
+     * @param num non-negative integer to count storage bytes for
+     * @return number of bytes needed to store num
+     */
+    public static int size(int num) {
+        int nBytes = 1;
+        while ((num >>>= BYTE_CAPACITY) != 0) {
+            nBytes++;
+        }
+        return nBytes;
+    }
+
+    /**
+     * Writes integer to byte array starting from given position
+     * @param arr array to write to
+     * @param pos position to start writing from
+     * @param num non-negative integer to write
+     * @return the position of the last written byte + 1
+     */
+    public static int write(byte[] arr, int pos, int num) {
+        for (int shift = (size(num) - 1) * BYTE_CAPACITY; shift > 0; shift -= BYTE_CAPACITY) {
+            arr[pos++] = (byte) ((num >>> shift) & PAYLOAD_MASK);
+        }
+        arr[pos++] = (byte) ((num & PAYLOAD_MASK) | TERMINATOR);
+        return pos;
+    }
+
+    /**
+     * Writes integer to output stream
+     * @param out stream to write to
+     * @param num non-negative integer to write
+     * @return number of written bytes
+     * @throws IOException if stream could not be written to
+     */
+    public static int write(OutputStream out, int num) throws IOException {
+        int nBytes = size(num);
+        for (int shift = (nBytes - 1) * BYTE_CAPACITY; shift > 0; shift -= BYTE_CAPACITY) {
+            out.write((num >>> shift) & PAYLOAD_MASK);
+        }
+        out.write((num & PAYLOAD_MASK) | TERMINATOR);
+        return nBytes;
+    }
+
+    /**
+     * Reads integer from byte array
+     * @param arr array to read from
+     * @param pos position of the first byte of the number
+     * @return read integer
+     */
+    public static int read(byte[] arr, int pos) {
+        int num = 0;
+        int b;
+        do {
+            b = arr[pos++];
+            num = (num << BYTE_CAPACITY) | (b & PAYLOAD_MASK);
+        } while ((b & TERMINATOR) == 0);
+        return num;
+    }
+
+    /**
+     * Returns the position right after the number, which starts at pos
+     * @param arr array to read from
+     * @param pos position of the first byte of the number
+     * @return position of the next number
+     */
+    public static int skip(byte[] arr, int pos) {
+        while ((arr[pos++] & TERMINATOR) == 0) {
+            // skip bytes of the number until terminating one
+        }
+        return pos;
+    }
+
+    /**
+     * Reads integer from buffer's current position and moves the position after it
+     * @param buf buffer to read from
+     * @return read integer
+     */
+    public static int read(ByteBuffer buf) {
+        int num = 0;
+        int b;
+        do {
+            b = buf.get();
+            num = (num << BYTE_CAPACITY) | (b & PAYLOAD_MASK);
+        } while ((b & TERMINATOR) == 0);
+        return num;
+    }
+
+    /**
+     * Moves buffer's position after the number, which starts at it
+     * @param buf buffer to read from
+     */
+    public static void skip(ByteBuffer buf) {
+        while ((buf.get() & TERMINATOR) == 0) {
+            // skip bytes of the number until terminating one
+        }
+    }
+}
@@ -1,45 +1,46 @@
 package main.dictionary;
 
+import main.indexes.PermutermIndex;
+
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.TreeMap;
 
 public class DictionaryPermuterm extends DictionaryList implements Serializable {
 
-    private Map<String, Integer> permutermIndex;
+    private PermutermIndex permutermIndex;
 
     public DictionaryPermuterm(File[] files) {
         super(files);
-        permutermIndex = new TreeMap<String, Integer>();
         buildPermuterm();
     }
 
     private void buildPermuterm() {
+        String[] terms = new String[nUniqueWords];
         for (int i = 0; i < nUniqueWords; i++) {
-            String word = words[i].getWord();
-            word += "$";
-            permutermIndex.put(word, i);
-            for (int j = 0, len = word.length(); j < len; j++) {
-                word = word.substring(1) + word.charAt(0);
-                permutermIndex.put(word, i);
-            }
+            terms[i] = words[i].getWord();
         }
+        permutermIndex = new PermutermIndex(terms);
     }
 
     private Iterable<String> getWordsStartingWithPermuterm(String permuterm) {
         ArrayList<String> res = new ArrayList<String>();
-        boolean found = false;
-        for (Map.Entry<String, Integer> entry : permutermIndex.entrySet()) {
-            if (entry.getKey().startsWith(permuterm)) {
-                found = true;
-                res.add(words[entry.getValue()].getWord());
-            } else if (found) {
-                // if matching permuterm was already found and current key doesn't match it
-                // then no next key will (because Map is sorted)
-                break;
-            }
+        for (int termID : permutermIndex.search(permuterm)) {
+            res.add(words[termID].getWord());
+        }
+        return res;
+    }
+
+    /**
+     * Returns words, which match wildcard query with any number of *
+     *
+     * @param query wildcard query, for example h*e or s*l*k
+     * @return matching words
+     */
+    public Iterable<String> getWordsMatching(String query) {
+        ArrayList<String> res = new ArrayList<String>();
+        for (int termID : permutermIndex.wildcardSearch(query.toLowerCase())) {
+            res.add(words[termID].getWord());
         }
         return res;
     }
@@ -73,8 +74,13 @@ public class DictionaryPermuterm extends DictionaryList implements Serializable
         }
         System.out.println();
 
-        for (Map.Entry<String, Integer> entry : dic.permutermIndex.entrySet()) {
-            System.out.println(entry.getKey() + " -> " + dic.words[entry.getValue()].getWord());
+        System.out.println("s*l*k: ");
+        match = dic.getWordsMatching("s*l*k");
+        for (String str : match) {
+            System.out.println(str);
         }
+        System.out.println();
+
+        System.out.println("Number of permuterms: " + dic.permutermIndex.size());
     }
 }
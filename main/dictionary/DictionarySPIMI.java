@@ -1,9 +1,10 @@
 package main.dictionary;
 
+import main.BM25;
 import main.Tokenizer;
 import main.Utils;
-import main.compression.CompressedDictionary;
 import main.compression.CompressedIndex;
+import main.compression.FSTDictionary;
 import main.indexes.IDList;
 import utils.TimeWatch;
 
@@ -21,12 +22,15 @@ import java.util.concurrent.TimeUnit;
  * @author Polina Shlepakova
  */
 public class DictionarySPIMI extends Dictionary implements Serializable {
-    private String[] terms;
     private int nBlocks;
     private int blockSize;
     private int merged = 0;
+    /** number of words in each document */
+    private int[] docLengths;
 
-    private CompressedDictionary dictionary;
+    /** maps terms to term IDs, used for exact lookup as well as prefix and range queries */
+    private FSTDictionary termsFST;
+    private FSTDictionary.Builder fstBuilder;
     private CompressedIndex postings;
 
     /**
@@ -50,13 +54,11 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
         this.nBlocks = 0;
         this.blockSize = 0;
 
-        this.terms = new String[10];
         walkFiles();
         mergeBlocks();
 
-        this.dictionary = new CompressedDictionary(terms);
-        terms = null;
-        this.postings = new CompressedIndex(new File(INDEX_FILE), nUniqueWords, "D:\\IR\\index\\compIndex.bin");
+        this.postings = new CompressedIndex(new File(INDEX_FILE), nUniqueWords, nFiles, new BM25(docLengths),
+                "D:\\IR\\index\\compIndex.bin");
     }
 
     public DictionarySPIMI(File[] files, int blocks) {
@@ -64,7 +66,6 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
         Arrays.sort(files, new FilesComparator());
         this.nBlocks = blocks;
 
-        this.terms = new String[10];
         mergeBlocks();
     }
 
@@ -82,8 +83,38 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
         return files[ID];
     }
 
+    /**
+     * @param word term
+     * @return ID of the term or -1 if there is no such term
+     */
+    public int getTermID(String word) {
+        return termsFST.get(word);
+    }
+
+    /**
+     * @return compressed posting lists with term frequencies
+     */
+    public CompressedIndex getPostings() {
+        return postings;
+    }
+
+    /**
+     * @param ID id of the document
+     * @return number of words in the document
+     */
+    public int getDocLength(int ID) {
+        return docLengths[ID];
+    }
+
+    /**
+     * @return average number of words in a document
+     */
+    public double getAverageDocLength() {
+        return (nFiles == 0) ? 0 : (double) nWords / nFiles;
+    }
+
     public int[] getIDList(String word) throws IOException, NullPointerException {
-        int termID = dictionary.getTermID(word);
+        int termID = termsFST.get(word);
         if (termID >= 0) {
             return postings.getPostingList(termID);
         } else {
@@ -91,6 +122,59 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
         }
     }
 
+    /**
+     * Returns IDs of documents, which contain all the words
+     * @param words words to search for
+     * @return sorted IDs of documents
+     */
+    public int[] and(String... words) {
+        int[] termIDs = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            termIDs[i] = termsFST.get(words[i]);
+            if (termIDs[i] < 0) {
+                return new int[0];
+            }
+        }
+        return postings.and(termIDs);
+    }
+
+    /**
+     * Returns IDs of documents, which contain at least one of the words
+     * @param words words to search for
+     * @return sorted IDs of documents
+     */
+    public int[] or(String... words) {
+        int[] termIDs = new int[words.length];
+        int nTerms = 0;
+        for (String word : words) {
+            int termID = termsFST.get(word);
+            if (termID >= 0) {
+                termIDs[nTerms++] = termID;
+            }
+        }
+        return postings.or(Arrays.copyOf(termIDs, nTerms));
+    }
+
+    /**
+     * Returns all terms, which start with prefix, in sorted order.
+     * Terms are read from FST lazily, while iterating.
+     * @param prefix prefix of terms
+     * @return terms with specified prefix
+     */
+    public Iterable<String> getPrefixedWords(String prefix) {
+        return termsFST.prefixSearch(prefix.toLowerCase());
+    }
+
+    /**
+     * Returns all terms in the range in sorted order
+     * @param from the smallest term of the range (inclusive), null means no lower bound
+     * @param to the end of the range (exclusive), null means no upper bound
+     * @return terms from the range
+     */
+    public Iterable<String> getWordsInRange(String from, String to) {
+        return termsFST.rangeSearch(from, to);
+    }
+
     /**
      * Iterates through all the files and adds terms and doc ids to dictionary.
      * When size of the block reaches its max, saves the dictionary to the file
@@ -99,6 +183,7 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
     protected void walkFiles() {
         System.out.println("Files: " + nFiles);
         HashMap<String, IDList> dictionary = new HashMap<String, IDList>(2000000);
+        docLengths = new int[files.length];
         for (int id = 0; id < files.length; id++) {
             System.out.println("File #" + id + ", size: " + files[id].length());
             Tokenizer t = null;
@@ -110,6 +195,7 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
                     for (String anInput : input) {
                         addTempTerm(dictionary, anInput, id);
                         nWords++;
+                        docLengths[id]++;
                         if (blockSize > MAX_BLOCK_SIZE) {
                             saveBlock(dictionary);
                             dictionary.clear();
@@ -191,10 +277,8 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
     }
 
     private void addTerm(String term) {
-        if (terms.length <= nUniqueWords) {
-            terms = Utils.resize(terms, nUniqueWords * 2);
-        }
-        terms[nUniqueWords++] = term;
+        // terms are not kept in an array, FST is the only copy of them
+        fstBuilder.add(term, nUniqueWords++);
     }
 
     class Pair implements Comparable<Pair> {
@@ -223,6 +307,8 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
 
     public void mergeBlocks() {
         System.out.println("Merge\nBlocks: " + nBlocks);
+        // merged terms come out sorted, so FST is built along the way
+        fstBuilder = new FSTDictionary.Builder();
         try {
             // opens BufferedReader for each file to be merged and FileWriter for the file to merge to
             BufferedReader[] readers = initReaders();
@@ -245,56 +331,70 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
             Pair currPair = pq.poll();
             String currTerm;
             int currFileID;
-            int lastID;
+            // ID and tf of the last posting, which is not written yet
+            int[] pending = new int[2];
             while (currPair != null) {
                 currTerm = currPair.term;
                 currFileID = currPair.fileID;
                 // add current term and posting list pair to dictionary
                 addTerm(currTerm);
-                lastID = writeArray(fw, input[currFileID], 1, -1);
+                pending[0] = -1;
+                writeArray(fw, input[currFileID], 1, pending);
                 // move respective file to the next line
                 moveToNextLine(readers, pq, input, currFileID);
                 // get next term
                 Pair nextPair = pq.poll();
-                // look through other terms to find equal to current
-                if (nextPair != null) {
-                    // add all equal terms to curr posting list and advance respective lines
-                    while (nextPair != null && (nextPair.term).equals(currTerm)) {
-                        int nextFileID = nextPair.fileID;
-                        // add next's posting list to dest file
-                        lastID = writeArray(fw, input[nextFileID], 1, lastID);
-                        // advance respective line
-                        moveToNextLine(readers, pq, input, nextFileID);
-                        // get next term
-                        nextPair = pq.poll();
-                    }
-                    // currTerm doesn't have any more equal terms, finish adding it
-                    fw.write('\n');
-                    // move on to the next one
-                    currPair = nextPair;
-                } else {
-                    // currEntry was the last term and posting list pair to be added
-                    break;
+                // add all equal terms to curr posting list and advance respective lines
+                while (nextPair != null && (nextPair.term).equals(currTerm)) {
+                    int nextFileID = nextPair.fileID;
+                    // add next's posting list to dest file
+                    writeArray(fw, input[nextFileID], 1, pending);
+                    // advance respective line
+                    moveToNextLine(readers, pq, input, nextFileID);
+                    // get next term
+                    nextPair = pq.poll();
                 }
+                // currTerm doesn't have any more equal terms, finish adding it
+                writePosting(fw, pending);
+                fw.write('\n');
+                // move on to the next one
+                currPair = nextPair;
             }
             closeFileIO(readers, fw);
         } catch (IOException e) {
             System.err.println(e.getMessage());
         }
-        // cut to the size
-        terms = Utils.resize(terms, nUniqueWords);
+        termsFST = fstBuilder.finish();
+        fstBuilder = null;
     }
 
-    private int writeArray(FileWriter fw, String[] arr, int start, int lastID) throws IOException {
-        int len = arr.length;
-        if (Integer.parseInt(arr[start]) != lastID) {
-            fw.write(arr[start] + " ");
-        }
-        for (int i = start + 1; i < len; i++) {
-            fw.write(arr[i] + " ");
+    /**
+     * Writes postings of a block, except the last one, which is kept in pending.
+     * If the first posting has the same ID as pending one (a document was split between blocks),
+     * their term frequencies are added.
+     * @param pending ID and tf of the posting, which is not written yet, ID is -1 if there is none
+     */
+    private void writeArray(FileWriter fw, String[] arr, int start, int[] pending) throws IOException {
+        for (int i = start, len = arr.length; i < len; i++) {
+            int separator = arr[i].indexOf(IDList.TF_SEPARATOR);
+            int ID = Integer.parseInt(arr[i].substring(0, separator));
+            int tf = Integer.parseInt(arr[i].substring(separator + 1));
+            if (ID == pending[0]) {
+                pending[1] += tf;
+                continue;
+            }
+            writePosting(fw, pending);
+            pending[0] = ID;
+            pending[1] = tf;
         }
         System.gc();
-        return Integer.parseInt(arr[len - 1]);
+    }
+
+    private void writePosting(FileWriter fw, int[] pending) throws IOException {
+        if (pending[0] >= 0) {
+            fw.write(pending[0] + IDList.TF_SEPARATOR + pending[1] + " ");
+            pending[0] = -1;
+        }
     }
 
     private void moveToNextLine(BufferedReader[] readers, PriorityQueue<Pair> pq, String[][] input, int fileID) throws IOException {
@@ -317,9 +417,9 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
     public void saveWordsIn(File file) {
         try {
             FileWriter fw = new FileWriter(file);
-            // save unique words
-            for (int i = 0; i < nUniqueWords; i++) {
-                fw.write(terms[i] + "\n");
+            // save unique words, they come out of FST in sorted order
+            for (String term : termsFST.prefixSearch("")) {
+                fw.write(term + "\n");
             }
             fw.close();
         } catch (IOException e) {
@@ -369,5 +469,10 @@ public class DictionarySPIMI extends Dictionary implements Serializable {
                 System.err.println("Could not find index file");
             }
         }
+
+        System.out.println("\nsherl*:");
+        for (String word : dic.getPrefixedWords("sherl")) {
+            System.out.println(word);
+        }
     }
 }
\ No newline at end of file
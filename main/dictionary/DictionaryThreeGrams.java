@@ -1,54 +1,47 @@
 package main.dictionary;
 
+import main.indexes.KGramIndex;
+
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.TreeMap;
 
 public class DictionaryThreeGrams extends DictionaryList implements Serializable {
 
-    private Map<String, LinkedList<Integer>> threeGrams;
+    private static final int K = 3;
+
+    private KGramIndex threeGrams;
 
     public DictionaryThreeGrams(File[] files) {
         super(files);
-        threeGrams = new TreeMap<String, LinkedList<Integer>>();
         buildThreeGrams();
     }
 
     private void buildThreeGrams() {
+        String[] terms = new String[nUniqueWords];
         for (int i = 0; i < nUniqueWords; i++) {
-            String word = words[i].getWord();
-            if (word.length() < 3) {
-                addThreeGram("$" + word, i);
-                addThreeGram(word + "$", i);
-            } else {
-                char[] charArr = word.toCharArray();
-                int len = charArr.length;
-                addThreeGram("$" + charArr[0] + charArr[1], i);
-                for (int j = 0; j < len - 2; j++) {
-                    addThreeGram("" + charArr[j] + charArr[j + 1] + charArr[j + 2], i);
-                }
-                addThreeGram("" + charArr[len - 2] + charArr[len - 1] + "$", i);
-            }
+            terms[i] = words[i].getWord();
         }
+        threeGrams = new KGramIndex(terms, K);
     }
 
-    private void addThreeGram(String threeGram, int srcIndex) {
-        if (threeGrams.containsKey(threeGram)) {
-            threeGrams.get(threeGram).add(srcIndex);
-        } else {
-            LinkedList<Integer> list = new LinkedList<Integer>();
-            list.add(srcIndex);
-            threeGrams.put(threeGram, list);
+    public Iterable<String> getWordsWithThreeGram(String threeGram) {
+        ArrayList<String> res = new ArrayList<String>();
+        for (int i : threeGrams.getTermIDs(threeGram)) {
+            res.add(words[i].getWord());
         }
+        return res;
     }
 
-    public Iterable<String> getWordsWithThreeGram(String threeGram) {
+    /**
+     * Returns words, which match wildcard query with any number of *
+     *
+     * @param query wildcard query, for example h*e or s*l*k
+     * @return matching words
+     */
+    public Iterable<String> getWordsMatching(String query) {
         ArrayList<String> res = new ArrayList<String>();
-        LinkedList<Integer> wordIDs = threeGrams.get(threeGram);
-        for (int i : wordIDs) {
+        for (int i : threeGrams.wildcardSearch(query.toLowerCase())) {
             res.add(words[i].getWord());
         }
         return res;
@@ -67,12 +60,16 @@ public class DictionaryThreeGrams extends DictionaryList implements Serializable
         };
         DictionaryThreeGrams dic = new DictionaryThreeGrams(files);
 
-        for (Map.Entry<String, LinkedList<Integer>> entry : dic.threeGrams.entrySet()) {
-            System.out.print("\n" + entry.getKey() + ": ");
-            Iterable<String> relatedWords = dic.getWordsWithThreeGram(entry.getKey());
-            for (String w : relatedWords) {
-                System.out.print(w + ", ");
-            }
+        System.out.println("Number of 3-grams: " + dic.threeGrams.size());
+        System.out.println("Size in bytes: " + dic.threeGrams.getSizeInBytes());
+
+        System.out.print("\n$sh: ");
+        for (String w : dic.getWordsWithThreeGram("$sh")) {
+            System.out.print(w + ", ");
+        }
+        System.out.print("\ns*l*k: ");
+        for (String w : dic.getWordsMatching("s*l*k")) {
+            System.out.print(w + ", ");
         }
     }
 }
@@ -3,12 +3,20 @@ package main.dictionary;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 
+import main.DoubleArrayTrie;
+import main.LevenshteinAutomaton;
 import main.Term;
 import main.Tokenizer;
 import main.Trie;
 import main.Utils;
+import main.compression.CompressedPositionalIndex;
+import main.compression.PositionalIndexSpillFile;
+import main.indexes.KGramIndex;
+import main.indexes.PermutermIndex;
 import main.indexes.PositionalIndex;
 import utils.TimeWatch;
 
@@ -23,10 +31,24 @@ import utils.TimeWatch;
  */
 public class DictionaryTrie extends Dictionary implements Serializable {
     private String dir;
-    private Trie trie;
-    private Trie reversedTrie;
+    private DoubleArrayTrie trie;
+    // maps reversed words to the same term IDs and word infos as trie
+    private DoubleArrayTrie reversedTrie;
+    // trie, words are added to while walking files, it is compacted afterwards
+    private transient Trie trieBuilder;
+    // file, positional indexes are moved to while walking files, null if they are kept in memory.
+    // It is serialized with the dictionary by its path, so spilled indexes can be read after loading
+    private PositionalIndexSpillFile spillFile;
+    private transient long maxPositionsInMemory;
+    // all unique words, index of a word is its term ID
+    private String[] terms;
+    // indexes for wildcard queries, are built on first use
+    private PermutermIndex permutermIndex;
+    private KGramIndex kGramIndex;
 
     private static final int INITIAL_ARRAY_SIZE = 10;
+    private static final int K = 3;
+    private static final String SPILL_FILE_NAME = "positions.spill";
 
     /**
      * Creates main by processing given files.
@@ -37,31 +59,239 @@ public class DictionaryTrie extends Dictionary implements Serializable {
      */
     public DictionaryTrie(File[] files) {
         super(files);
-        this.trie = new Trie();
-        this.reversedTrie = new Trie();
+        build();
+    }
+
+    /**
+     * Creates dictionary by processing given files. Positional indexes are moved to a spill file
+     * each time the number of positions in memory reaches the limit, so that indexes of the collection
+     * do not have to fit in memory. They are read back from the file, when they are requested.
+     *
+     * @param files                files to build dictionary from
+     * @param spillDir             directory to create the spill file in
+     * @param maxPositionsInMemory number of positions, after which indexes are moved to disk
+     */
+    public DictionaryTrie(File[] files, String spillDir, long maxPositionsInMemory) {
+        super(files);
+        try {
+            this.spillFile = new PositionalIndexSpillFile(spillDir, SPILL_FILE_NAME);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create spill file in " + spillDir, e);
+        }
+        this.maxPositionsInMemory = maxPositionsInMemory;
+        build();
+        try {
+            // written indexes can still be read
+            spillFile.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write spill file", e);
+        }
+    }
+
+    private void build() {
+        this.trieBuilder = new Trie();
         walkFiles();
+        this.trie = trieBuilder.toDoubleArrayTrie();
+        this.reversedTrie = trie.reversed();
+        this.trieBuilder = null;
         nUniqueWords = trie.getnUniqueWords();
+        this.terms = new String[nUniqueWords];
+        DoubleArrayTrie.WordIterator words = trie.prefixIterator("", DoubleArrayTrie.NO_LIMIT);
+        int termID;
+        while ((termID = words.nextValue()) >= 0) {
+            terms[termID] = words.getWord();
+        }
     }
 
     public PositionalIndex getPositionalIndex(String word) {
-        return trie.getPositionalIndex(word);
+        return getPositionalIndex(trie.getWordInfo(word));
+    }
+
+    /**
+     * Returns ID of the term, which is its index among all unique words in sorted order.
+     * Words found with both prefix and postfix search have the same IDs.
+     *
+     * @param word word to get ID for
+     * @return term ID or -1 if there is no such word
+     */
+    public int getTermID(String word) {
+        return trie.getValue(word);
+    }
+
+    /**
+     * @param termID ID of the term
+     * @return the term
+     */
+    public String getTerm(int termID) {
+        return terms[termID];
+    }
+
+    /**
+     * Returns iterator over IDs of words, which start from prefix, in increasing order
+     *
+     * @param prefix the String found words should start from
+     * @return iterator, which yields term IDs with nextValue()
+     */
+    public DoubleArrayTrie.WordIterator getPrefixedTermIDs(String prefix) {
+        return trie.prefixIterator(prefix, DoubleArrayTrie.NO_LIMIT);
+    }
+
+    /**
+     * Counts words, which start from prefix, with two binary searches over the terms,
+     * which are sorted, as term IDs are given in sorted order
+     *
+     * @param prefix the String words should start from
+     * @return number of such words
+     */
+    public int countPrefixedTerms(String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int first = low;
+        high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - first;
+    }
+
+    /**
+     * Returns iterator over IDs of words, which end with postfix, ordered by the reversed words
+     *
+     * @param postfix the String found words should end with
+     * @return iterator, which yields term IDs with nextValue()
+     */
+    public DoubleArrayTrie.WordIterator getPostfixedTermIDs(String postfix) {
+        return reversedTrie.prefixIterator(reversed(postfix), DoubleArrayTrie.NO_LIMIT);
+    }
+
+    /**
+     * Finds words within Levenshtein distance from the word
+     *
+     * @param word        word to find similar words for
+     * @param maxDistance maximum number of insertions, deletions and substitutions
+     * @return for each found word <code>distance &lt;&lt; 32 | termID</code>, in increasing order of term IDs
+     */
+    public long[] getSimilarTermIDs(String word, int maxDistance) {
+        return trie.fuzzySearch(new LevenshteinAutomaton(word.toLowerCase(), maxDistance));
+    }
+
+    /**
+     * @param termID ID of the term
+     * @return number of occurrences of the term in all files
+     */
+    public int getFrequency(int termID) {
+        return trie.getWordInfo(termID).getFrequency();
+    }
+
+    /**
+     * @return permuterm index of all words, term IDs are the same as in this dictionary
+     */
+    public PermutermIndex getPermutermIndex() {
+        if (permutermIndex == null) {
+            permutermIndex = new PermutermIndex(terms);
+        }
+        return permutermIndex;
+    }
+
+    /**
+     * @return 3-gram index of all words, term IDs are the same as in this dictionary
+     */
+    public KGramIndex getKGramIndex() {
+        if (kGramIndex == null) {
+            kGramIndex = new KGramIndex(terms, K);
+        }
+        return kGramIndex;
+    }
+
+    public PositionalIndex getPositionalIndex(int termID) {
+        return getPositionalIndex(trie.getWordInfo(termID));
     }
 
     public PositionalIndex getReversedPositionalIndex(String word) {
-        return reversedTrie.getPositionalIndex(word);
+        return getPositionalIndex(reversedTrie.getWordInfo(word));
+    }
+
+    /**
+     * @param wordInfo wordInfo of the word or null
+     * @return positional index of the word, read from the spill file if it was moved there
+     */
+    private PositionalIndex getPositionalIndex(Trie.WordInfo wordInfo) {
+        if (wordInfo == null) {
+            return null;
+        }
+        if (spillFile == null) {
+            return wordInfo.getPositionalIndex();
+        }
+        try {
+            return wordInfo.getPositionalIndex(spillFile);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read spill file", e);
+        }
     }
 
     public Iterable<String> getPrefixedWords(String prefix) {
         return trie.prefixSearch(prefix);
     }
 
+    /**
+     * Returns at most limit words, which start from prefix, lazily
+     *
+     * @param prefix the String found words should start from
+     * @param limit  maximum number of words, or {@link DoubleArrayTrie#NO_LIMIT}
+     * @return words, which start from prefix
+     */
+    public Iterable<String> getPrefixedWords(String prefix, int limit) {
+        return trie.prefixSearch(prefix, limit);
+    }
+
     public Iterable<String> getPostfixedWords(String postfix) {
-        Iterable<String> words = reversedTrie.prefixSearch(reversed(postfix));
-        ArrayList<String> result = new ArrayList<String>();
-        for (String word : words) {
-            result.add(reversed(word));
-        }
-        return result;
+        return getPostfixedWords(postfix, DoubleArrayTrie.NO_LIMIT);
+    }
+
+    /**
+     * Returns at most limit words, which end with postfix, lazily.
+     * Words are sorted by their reversed form.
+     *
+     * @param postfix the String found words should end with
+     * @param limit   maximum number of words, or {@link DoubleArrayTrie#NO_LIMIT}
+     * @return words, which end with postfix
+     */
+    public Iterable<String> getPostfixedWords(String postfix, final int limit) {
+        final String reversedPostfix = reversed(postfix);
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                final DoubleArrayTrie.WordIterator words = reversedTrie.prefixIterator(reversedPostfix, limit);
+                return new Iterator<String>() {
+                    public boolean hasNext() {
+                        return words.hasNext();
+                    }
+
+                    public String next() {
+                        if (words.nextValue() < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        return words.getReversedWord();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
     }
 
     public Iterable<String> getAllPrefixedWords() {
@@ -69,12 +299,7 @@ public class DictionaryTrie extends Dictionary implements Serializable {
     }
 
     public Iterable<String> getAllPostfixedWords() {
-        Iterable<String> words = reversedTrie.getAllWords();
-        ArrayList<String> result = new ArrayList<String>();
-        for (String word : words) {
-            result.add(reversed(word));
-        }
-        return result;
+        return getPostfixedWords("");
     }
 
     public File getFile(int ID) {
@@ -86,8 +311,19 @@ public class DictionaryTrie extends Dictionary implements Serializable {
      * Then trims array of words and matrix to the size of the content.
      */
     protected void walkFiles() {
+        // number of words, whose positions were moved to the spill file
+        long nSpilledWords = 0;
         for (int id = 0, len = files.length; id < len; id++) {
             walkFile(files[id], id);
+            // indexes are moved only between files, so that parts of an index do not share documents
+            if (spillFile != null && nWords - nSpilledWords >= maxPositionsInMemory) {
+                try {
+                    trieBuilder.movePositionalIndexesOnDisk(spillFile);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write spill file", e);
+                }
+                nSpilledWords = nWords;
+            }
         }
     }
 
@@ -111,8 +347,7 @@ public class DictionaryTrie extends Dictionary implements Serializable {
                 int inputLength = input.length;
                 // fill trie with words from input
                 for (int i = 0; i < inputLength; i++, pos++) {
-                    trie.addWord(input[i], ID, pos);
-                    reversedTrie.addWord(reversed(input[i]), ID, pos);
+                    trieBuilder.addWord(input[i], ID, pos);
                 }
                 nWords += inputLength;
             }
@@ -161,6 +396,36 @@ public class DictionaryTrie extends Dictionary implements Serializable {
         }
     }
 
+    /**
+     * Writes positional indexes of all terms to disk, documents and positions in separate files,
+     * so that they can be read without keeping positional indexes in memory.
+     *
+     * @param filepath filepath to the index files without extension
+     * @return index, in which term IDs are the same as in this dictionary
+     */
+    public CompressedPositionalIndex savePositionalIndex(String filepath) {
+        // indexes are passed one at a time, the writer does not keep them
+        Iterator<PositionalIndex> indexes = new Iterator<PositionalIndex>() {
+            private int termID = 0;
+
+            public boolean hasNext() {
+                return termID < nUniqueWords;
+            }
+
+            public PositionalIndex next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getPositionalIndex(termID++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return new CompressedPositionalIndex(indexes, nUniqueWords, filepath);
+    }
+
 
     public static void main(String[] args) {
         /* CREATING COLLECTION OF FILES */
@@ -6,6 +6,7 @@ import main.Utils;
 import main.compression.CompressedDictionary;
 import main.compression.CompressedIndex;
 import main.indexes.ZonesIDList;
+import utils.MinimalPerfectHash;
 import utils.TimeWatch;
 
 import java.io.*;
@@ -17,6 +18,8 @@ import java.util.concurrent.TimeUnit;
  */
 public class DictionaryZones extends Dictionary implements Serializable {
     private String[] terms;
+    /** maps terms to their positions in terms array */
+    private MinimalPerfectHash termsHash;
     private int nBlocks;
     private int blockSize;
 
@@ -50,6 +53,7 @@ public class DictionaryZones extends Dictionary implements Serializable {
         this.terms = new String[10];
         walkFiles();
         mergeBlocks();
+        this.termsHash = new MinimalPerfectHash(terms);
     }
 
     private class FilesComparator implements Comparator<File> {
@@ -67,7 +71,7 @@ public class DictionaryZones extends Dictionary implements Serializable {
     }
 
     public ZonesIDList getZonesIDList(String word) throws IOException, NullPointerException {
-        int wordID = Utils.binarySearch(terms, word.toLowerCase());
+        int wordID = Utils.hashSearch(terms, termsHash, word.toLowerCase());
         if (wordID >= 0) {
             BufferedReader br = new BufferedReader(new FileReader(INDEX_FILE));
             // skip all previous id lists
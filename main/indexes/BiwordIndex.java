@@ -0,0 +1,280 @@
+package main.indexes;
+
+import main.compression.CompressedPositionalIndex;
+
+import java.util.Arrays;
+
+/**
+ * Index of selected biwords (pairs of adjacent words) with positions, at which the pairs start.
+ * <p>
+ * Only pairs, which are worth it, are indexed: frequent in the query log
+ * or made of common words, which have long posting lists and make positional intersection expensive.
+ * Postings are built from the positional index, so every stored pair actually occurs in documents.
+ * <p>
+ * Pairs are stored as sorted longs (first term ID in the high half) and found with binary search.
+ * Postings of all pairs are in one int array: for each document its ID, number of positions and the positions.
+ */
+public class BiwordIndex {
+
+    private long[] pairs;
+    /** start of each pair's postings, the last element is the end of all postings */
+    private int[] pointers;
+    private int[] docFrequencies;
+    private int[] postings;
+
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    /**
+     * Builds postings of the pairs, pairs, which do not occur in any document, are not stored
+     *
+     * @param index positional index of single terms
+     * @param pairs candidate pairs, made with {@link #pair(int, int)}, may repeat
+     */
+    public BiwordIndex(CompressedPositionalIndex index, long[] pairs) {
+        long[] sorted = Arrays.copyOf(pairs, pairs.length);
+        Arrays.sort(sorted);
+        this.pairs = new long[sorted.length];
+        this.pointers = new int[sorted.length + 1];
+        this.docFrequencies = new int[sorted.length];
+        this.postings = new int[INITIAL_ARRAY_SIZE];
+        int nPairs = 0;
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue;
+            }
+            pointers[nPairs] = size;
+            int nDocs = 0;
+            PositionsIterator first = index.getPostings(getFirst(sorted[i]));
+            PositionsIterator second = index.getPostings(getSecond(sorted[i]));
+            boolean hasDoc = first.nextDoc();
+            while (hasDoc) {
+                if (!second.advance(first.getDocID())) {
+                    break;
+                }
+                if (second.getDocID() != first.getDocID()) {
+                    hasDoc = first.advance(second.getDocID());
+                    continue;
+                }
+                int[] firstPositions = first.getPositions();
+                int[] secondPositions = second.getPositions();
+                int docStart = size;
+                ensureCapacity(size + 2 + firstPositions.length);
+                postings[size++] = first.getDocID();
+                int countIndex = size++;
+                int count = 0;
+                for (int p1 = 0, p2 = 0; p1 < firstPositions.length && p2 < secondPositions.length; ) {
+                    int expected = firstPositions[p1] + 1;
+                    if (secondPositions[p2] < expected) {
+                        p2++;
+                    } else if (secondPositions[p2] > expected) {
+                        p1++;
+                    } else {
+                        postings[size++] = firstPositions[p1];
+                        count++;
+                        p1++;
+                        p2++;
+                    }
+                }
+                if (count == 0) {
+                    size = docStart;
+                } else {
+                    postings[countIndex] = count;
+                    nDocs++;
+                }
+                hasDoc = first.nextDoc();
+            }
+            if (nDocs > 0) {
+                this.pairs[nPairs] = sorted[i];
+                docFrequencies[nPairs] = nDocs;
+                nPairs++;
+            }
+        }
+        pointers[nPairs] = size;
+        this.pairs = Arrays.copyOf(this.pairs, nPairs);
+        this.pointers = Arrays.copyOf(pointers, nPairs + 1);
+        this.docFrequencies = Arrays.copyOf(docFrequencies, nPairs);
+        this.postings = Arrays.copyOf(postings, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(capacity, postings.length * 2));
+        }
+    }
+
+    /**
+     * @param firstTermID  ID of the first word
+     * @param secondTermID ID of the second word
+     * @return pair as one long
+     */
+    public static long pair(int firstTermID, int secondTermID) {
+        return ((long) firstTermID << 32) | (secondTermID & 0xFFFFFFFFL);
+    }
+
+    private static int getFirst(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int getSecond(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * Chooses pairs of the query log, which occur at least minQueryFrequency times,
+     * and all pairs of the most common terms, which are contained in at least minDocFrequency documents
+     *
+     * @param queryLog          term IDs of each logged phrase query, -1 for unknown words
+     * @param minQueryFrequency minimum number of the pair's occurrences in the query log
+     * @param index             positional index to take document frequencies from
+     * @param minDocFrequency   minimum document frequency of both words of the pair
+     * @param maxCommonTerms    maximum number of common terms, all pairs of which are chosen
+     * @return candidate pairs
+     */
+    public static long[] selectPairs(int[][] queryLog, int minQueryFrequency,
+                                     CompressedPositionalIndex index, int minDocFrequency, int maxCommonTerms) {
+        // count pairs of the query log by sorting them
+        int nLogged = 0;
+        for (int[] query : queryLog) {
+            nLogged += Math.max(0, query.length - 1);
+        }
+        long[] logged = new long[nLogged];
+        nLogged = 0;
+        for (int[] query : queryLog) {
+            for (int i = 0; i + 1 < query.length; i++) {
+                if (query[i] >= 0 && query[i + 1] >= 0) {
+                    logged[nLogged++] = pair(query[i], query[i + 1]);
+                }
+            }
+        }
+        Arrays.sort(logged, 0, nLogged);
+
+        // the most common terms, sorted by document frequency in descending order
+        int[] common = new int[Math.max(0, maxCommonTerms)];
+        int nCommon = 0;
+        for (int termID = 0; termID < index.size() && common.length > 0; termID++) {
+            int docFrequency = index.getDocFrequency(termID);
+            if (docFrequency < minDocFrequency
+                    || (nCommon == common.length && docFrequency <= index.getDocFrequency(common[nCommon - 1]))) {
+                continue;
+            }
+            int i = (nCommon < common.length) ? nCommon++ : nCommon - 1;
+            for (; i > 0 && index.getDocFrequency(common[i - 1]) < docFrequency; i--) {
+                common[i] = common[i - 1];
+            }
+            common[i] = termID;
+        }
+
+        long[] res = new long[INITIAL_ARRAY_SIZE];
+        int resIndex = 0;
+        for (int start = 0, end; start < nLogged; start = end) {
+            end = start + 1;
+            while (end < nLogged && logged[end] == logged[start]) {
+                end++;
+            }
+            if (end - start >= minQueryFrequency) {
+                if (resIndex == res.length) {
+                    res = Arrays.copyOf(res, res.length * 2);
+                }
+                res[resIndex++] = logged[start];
+            }
+        }
+        for (int i = 0; i < nCommon; i++) {
+            for (int j = 0; j < nCommon; j++) {
+                if (resIndex == res.length) {
+                    res = Arrays.copyOf(res, res.length * 2);
+                }
+                res[resIndex++] = pair(common[i], common[j]);
+            }
+        }
+        return Arrays.copyOf(res, resIndex);
+    }
+
+    private int find(int firstTermID, int secondTermID) {
+        return Arrays.binarySearch(pairs, pair(firstTermID, secondTermID));
+    }
+
+    /**
+     * @return true if the pair is indexed
+     */
+    public boolean contains(int firstTermID, int secondTermID) {
+        return find(firstTermID, secondTermID) >= 0;
+    }
+
+    /**
+     * @return number of documents, which contain the pair, or -1 if the pair is not indexed
+     */
+    public int getDocFrequency(int firstTermID, int secondTermID) {
+        int pairIndex = find(firstTermID, secondTermID);
+        return (pairIndex < 0) ? -1 : docFrequencies[pairIndex];
+    }
+
+    /**
+     * Returns postings of the pair, positions are those of the first word
+     *
+     * @return iterator positioned before the first document, or null if the pair is not indexed
+     */
+    public PositionsIterator getPostings(int firstTermID, int secondTermID) {
+        int pairIndex = find(firstTermID, secondTermID);
+        return (pairIndex < 0) ? null : new PostingsIterator(pointers[pairIndex], pointers[pairIndex + 1]);
+    }
+
+    /**
+     * @return number of indexed pairs
+     */
+    public int size() {
+        return pairs.length;
+    }
+
+    public long getSizeInBytes() {
+        return 8L * pairs.length + 4L * (pointers.length + docFrequencies.length + postings.length);
+    }
+
+    private class PostingsIterator implements PositionsIterator {
+
+        /** start of the current document in postings */
+        private int current;
+        /** start of the next document */
+        private int next;
+        private int end;
+
+        private PostingsIterator(int start, int end) {
+            this.current = -1;
+            this.next = start;
+            this.end = end;
+        }
+
+        public boolean nextDoc() {
+            if (next == end) {
+                return false;
+            }
+            current = next;
+            next = current + 2 + postings[current + 1];
+            return true;
+        }
+
+        public boolean advance(int target) {
+            if (current >= 0 && postings[current] >= target) {
+                return true;
+            }
+            while (nextDoc()) {
+                if (postings[current] >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getDocID() {
+            return postings[current];
+        }
+
+        public int getFrequency() {
+            return postings[current + 1];
+        }
+
+        public int[] getPositions() {
+            return Arrays.copyOfRange(postings, current + 2, current + 2 + postings[current + 1]);
+        }
+    }
+}
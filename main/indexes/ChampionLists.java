@@ -0,0 +1,96 @@
+package main.indexes;
+
+import main.BM25;
+import main.compression.CompressedIndex;
+
+import java.util.Arrays;
+
+/**
+ * Champion lists of common terms: for every term, which is contained in many documents,
+ * r documents with the highest BM25 weight of the term (its frequency normalized by document length).
+ * <p>
+ * Documents, which are best for at least one query term, are likely to be the best for the query,
+ * so a ranked query can score only documents of champion lists instead of long posting lists.
+ * <p>
+ * Lists are kept in memory: IDs of all lists are in one array, sorted within each list.
+ */
+public class ChampionLists {
+
+    /** terms, which have champion lists, sorted */
+    private int[] termIDs;
+    /** start of each term's list, the last element is the end of all lists */
+    private int[] pointers;
+    private int[] docIDs;
+
+    /**
+     * @param index           index with term frequencies
+     * @param scorer          BM25 of the collection
+     * @param minDocFrequency minimum number of documents of a term, which gets a champion list
+     * @param r               number of documents in a champion list
+     */
+    public ChampionLists(CompressedIndex index, BM25 scorer, int minDocFrequency, int r) {
+        int nTerms = 0;
+        int nDocs = 0;
+        for (int termID = 0; termID < index.size(); termID++) {
+            if (index.getDocFrequency(termID) >= minDocFrequency) {
+                nTerms++;
+                nDocs += Math.min(r, index.getDocFrequency(termID));
+            }
+        }
+        this.termIDs = new int[nTerms];
+        this.pointers = new int[nTerms + 1];
+        this.docIDs = new int[nDocs];
+        nTerms = 0;
+        nDocs = 0;
+        for (int termID = 0; termID < index.size(); termID++) {
+            if (index.getDocFrequency(termID) < minDocFrequency) {
+                continue;
+            }
+            int[] IDs = index.getPostingList(termID);
+            int[] tfs = index.getFrequencies(termID);
+            // weight in the high half, so that sorting puts the best documents last,
+            // weights are positive, so their bits are ordered as the weights
+            long[] postings = new long[IDs.length];
+            for (int i = 0; i < IDs.length; i++) {
+                postings[i] = ((long) Float.floatToIntBits(scorer.weight(tfs[i], IDs[i])) << 32) | IDs[i];
+            }
+            Arrays.sort(postings);
+            int size = Math.min(r, postings.length);
+            termIDs[nTerms] = termID;
+            pointers[nTerms] = nDocs;
+            for (int i = postings.length - size; i < postings.length; i++) {
+                docIDs[nDocs++] = (int) postings[i];
+            }
+            Arrays.sort(docIDs, pointers[nTerms], nDocs);
+            nTerms++;
+        }
+        pointers[nTerms] = nDocs;
+    }
+
+    /**
+     * @return true if the term has a champion list
+     */
+    public boolean contains(int termID) {
+        return Arrays.binarySearch(termIDs, termID) >= 0;
+    }
+
+    /**
+     * @param termID id of the term
+     * @return sorted IDs of the champion list, or null if the term does not have it
+     */
+    public int[] getDocIDs(int termID) {
+        int i = Arrays.binarySearch(termIDs, termID);
+        return (i < 0) ? null : Arrays.copyOfRange(docIDs, pointers[i], pointers[i + 1]);
+    }
+
+    /**
+     * @return number of terms with champion lists
+     */
+    public int size() {
+        return termIDs.length;
+    }
+
+    public long getSizeInBytes() {
+        return 4L * (termIDs.length + pointers.length + docIDs.length);
+    }
+}
@@ -5,6 +5,8 @@ import java.io.Serializable;
 /**
  * A convenience class to make it easier to create and read ID list from a String
  * (as ID lists are stored in a file on the disc) and add new elements to it.
+ * Each ID has the number of times the term occurs in the document (term frequency),
+ * in the String they are written as <code>id:tf</code>.
  * It can also add skips to a list, which will make the iteration over it faster.
  */
 // size: 8 + 4 + 4 + 4 = 20 + padding = 24
@@ -14,7 +16,10 @@ public class IDList implements Serializable { // 8
     private Node last; // 4
     private int size; // 4
 
-    // size: 8 + 4 + 4 + 4 = 20 + padding = 24
+    /** separates ID from term frequency in String representation */
+    public static final String TF_SEPARATOR = ":";
+
+    // size: 8 + 4 + 4 + 4 + 4 = 24
     class Node implements Serializable { // 8
         /** next element of the list after this one */
         Node next; // 4
@@ -22,15 +27,22 @@ public class IDList implements Serializable { // 8
         Node skip; // 4
         /** value (id) */
         int val; // 4
+        /** term frequency in the document */
+        int tf; // 4
 
         Node(int val) {
+            this(val, 1);
+        }
+
+        Node(int val, int tf) {
             this.next = null;
             this.skip = null;
             this.val = val;
+            this.tf = tf;
         }
 
         public String toString() {
-            return "" + val;
+            return val + TF_SEPARATOR + tf;
         }
     }
 
@@ -54,7 +66,8 @@ public class IDList implements Serializable { // 8
     }
 
     /**
-     * Creates IDList from a line with IDs, separated by whitespaces
+     * Creates IDList from a line with IDs, separated by whitespaces.
+     * IDs may be followed by term frequencies as id:tf, otherwise the frequency is 1.
      *
      * @param line a String with IDs separated by whitespaces
      */
@@ -67,14 +80,14 @@ public class IDList implements Serializable { // 8
                 this.last = null;
                 break;
             case 1:
-                this.first = new Node(Integer.parseInt(input[0]));
+                this.first = parseNode(input[0]);
                 this.last = first;
                 break;
             default:
-                this.first = new Node(Integer.parseInt(input[0]));
+                this.first = parseNode(input[0]);
                 Node prev = this.first;
                 for (int i = 1; i < len; i++) {
-                    Node curr = new Node(Integer.parseInt(input[i]));
+                    Node curr = parseNode(input[i]);
                     prev.next = curr;
                     prev = curr;
                 }
@@ -84,6 +97,14 @@ public class IDList implements Serializable { // 8
         this.size = len;
     }
 
+    private Node parseNode(String str) {
+        int separator = str.indexOf(TF_SEPARATOR);
+        if (separator < 0) {
+            return new Node(Integer.parseInt(str));
+        }
+        return new Node(Integer.parseInt(str.substring(0, separator)), Integer.parseInt(str.substring(separator + 1)));
+    }
+
     /**
      * Add new ID to the list
      * @param val new ID
@@ -100,11 +121,13 @@ public class IDList implements Serializable { // 8
     }
 
     /**
-     * Add new ID to the list only if it is not the same as the last one added
+     * Add new ID to the list only if it is not the same as the last one added,
+     * otherwise increments term frequency of the last one
      * @param val new ID
      */
     public void addNoRepeat(int val) {
         if (last.val == val) {
+            last.tf++;
             return;
         }
         Node oldLast = last;
@@ -162,18 +185,17 @@ public class IDList implements Serializable { // 8
 
     /**
      * Converts ID list to a String.
-     * A String will contain numbers, separated by whitespaces
+     * A String will contain id:tf pairs, separated by whitespaces
      * (the same format as this class can read from,
      * so the generated String can then be converted to IDList again).
      * @return a String with numbers separated by whitespaces.
      */
     public String toString() {
-        String str = new String();
-        IDIterator itr = idIterator();
-        while (itr.hasNext()) {
-            str += itr.next() + " ";
+        StringBuilder str = new StringBuilder();
+        for (Node node = first; node != null; node = node.next) {
+            str.append(node).append(' ');
         }
-        return str;
+        return str.toString();
     }
 
     public IDIterator idIterator() {
@@ -0,0 +1,377 @@
+package main.indexes;
+
+import main.Utils;
+import main.compression.VariableByte;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Index of k-grams over a fixed array of words, is used to answer wildcard queries.
+ * <p>
+ * Each word is extended with boundary marks ($word$), and all of its k-grams are indexed.
+ * A k-gram is packed into one long: every char is replaced by its code in the alphabet of the words,
+ * which takes only as many bits as needed. Words shorter than k - 2 chars have one shorter k-gram.
+ * <p>
+ * K-grams are kept in a sorted array, and IDs of words containing each of them
+ * (indexes in the array the index was built from) are stored as sorted differences,
+ * variable byte encoded in one byte array.
+ */
+public class KGramIndex implements Serializable {
+
+    public static final char BOUNDARY = '$';
+    private static final char WILDCARD = '*';
+    /** code of the boundary mark, 0 is left for the empty positions of shorter k-grams */
+    private static final int BOUNDARY_CODE = 1;
+
+    private String[] words;
+    private int k;
+    /** sorted chars, which words consist of; char's code is its index + 2 */
+    private char[] alphabet;
+    private int bitsPerChar;
+    /** sorted packed k-grams */
+    private long[] grams;
+    /** number of words containing each k-gram */
+    private int[] counts;
+    /** position of each k-gram's postings in postings array, and the end of postings */
+    private int[] starts;
+    private byte[] postings;
+
+    /**
+     * Builds k-gram index over the words
+     *
+     * @param words words to index, their indexes are used as term IDs
+     * @param k     length of k-grams
+     * @throws IllegalArgumentException if k is less than 2 or k-grams of the words do not fit in a long
+     */
+    public KGramIndex(String[] words, int k) {
+        if (k < 2) {
+            throw new IllegalArgumentException("k should be at least 2: " + k);
+        }
+        this.words = words;
+        this.k = k;
+        this.alphabet = buildAlphabet(words);
+        this.bitsPerChar = 32 - Integer.numberOfLeadingZeros(alphabet.length + 1);
+        if (bitsPerChar * k > 63) {
+            throw new IllegalArgumentException(k + "-grams over alphabet of " + alphabet.length
+                    + " chars do not fit in a long");
+        }
+
+        // collect all k-grams and find the distinct ones
+        int nAll = 0;
+        for (String word : words) {
+            nAll += nGrams(word);
+        }
+        long[] all = new long[nAll];
+        int index = 0;
+        for (String word : words) {
+            index = addGrams(word, all, index);
+        }
+        Arrays.sort(all);
+        int nGrams = 0;
+        for (int i = 0; i < nAll; i++) {
+            if (nGrams == 0 || all[nGrams - 1] != all[i]) {
+                all[nGrams++] = all[i];
+            }
+        }
+        this.grams = Arrays.copyOf(all, nGrams);
+        buildPostings();
+    }
+
+    private static char[] buildAlphabet(String[] words) {
+        boolean[] present = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        for (String word : words) {
+            for (int i = 0, len = word.length(); i < len; i++) {
+                char chr = word.charAt(i);
+                if (!present[chr]) {
+                    present[chr] = true;
+                    size++;
+                }
+            }
+        }
+        char[] chars = new char[size];
+        int index = 0;
+        for (int chr = 0; chr <= Character.MAX_VALUE; chr++) {
+            if (present[chr]) {
+                chars[index++] = (char) chr;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Fills postings of all k-grams: term IDs are added in increasing order,
+     * so only differences between them are stored
+     */
+    private void buildPostings() {
+        int nGrams = grams.length;
+        counts = new int[nGrams];
+        int[] lastIDs = new int[nGrams];
+        Arrays.fill(lastIDs, -1);
+        int[] sizes = new int[nGrams];
+        long[] wordGrams = new long[0];
+        // first pass counts bytes of postings, the second one writes them
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                starts = new int[nGrams + 1];
+                for (int i = 0; i < nGrams; i++) {
+                    starts[i + 1] = starts[i] + sizes[i];
+                }
+                postings = new byte[starts[nGrams]];
+                System.arraycopy(starts, 0, sizes, 0, nGrams);
+                Arrays.fill(lastIDs, -1);
+            }
+            for (int termID = 0; termID < words.length; termID++) {
+                int n = nGrams(words[termID]);
+                if (n > wordGrams.length) {
+                    wordGrams = new long[n];
+                }
+                addGrams(words[termID], wordGrams, 0);
+                for (int i = 0; i < n; i++) {
+                    int gram = Arrays.binarySearch(grams, wordGrams[i]);
+                    if (lastIDs[gram] == termID) {
+                        // k-gram occurs in the word more than once
+                        continue;
+                    }
+                    int gap = termID - lastIDs[gram] - 1;
+                    if (pass == 0) {
+                        sizes[gram] += VariableByte.size(gap);
+                        counts[gram]++;
+                    } else {
+                        // sizes now hold positions to write to
+                        sizes[gram] = VariableByte.write(postings, sizes[gram], gap);
+                    }
+                    lastIDs[gram] = termID;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of k-grams of the word extended with boundary marks
+     */
+    private int nGrams(String word) {
+        return Math.max(1, word.length() + 2 - k + 1);
+    }
+
+    /**
+     * Packs all k-grams of the word extended with boundary marks into array
+     *
+     * @param word  word to get k-grams of
+     * @param arr   array to write k-grams to
+     * @param index position to start writing from
+     * @return position after the last written k-gram
+     */
+    private int addGrams(String word, long[] arr, int index) {
+        int length = word.length() + 2;
+        int nChars = Math.min(k, length);
+        for (int start = 0; start + nChars <= length; start++) {
+            long gram = 0;
+            for (int i = start; i < start + nChars; i++) {
+                int code = (i == 0 || i == length - 1) ? BOUNDARY_CODE : code(word.charAt(i - 1));
+                gram = (gram << bitsPerChar) | code;
+            }
+            arr[index++] = gram;
+        }
+        return index;
+    }
+
+    /**
+     * @return code of the char or -1 if it is not in the alphabet
+     */
+    private int code(char chr) {
+        if (chr == BOUNDARY) {
+            return BOUNDARY_CODE;
+        }
+        int index = Arrays.binarySearch(alphabet, chr);
+        return (index < 0) ? -1 : index + 2;
+    }
+
+    /**
+     * Finds k-gram in the index
+     *
+     * @param gram k chars, $ marks the beginning or the end of a word
+     * @return index of the k-gram in grams array or -1 if no word contains it
+     */
+    private int find(String gram) {
+        long key = 0;
+        for (int i = 0, len = gram.length(); i < len; i++) {
+            int code = code(gram.charAt(i));
+            if (code < 0) {
+                return -1;
+            }
+            key = (key << bitsPerChar) | code;
+        }
+        int index = Arrays.binarySearch(grams, key);
+        return (index < 0) ? -1 : index;
+    }
+
+    /**
+     * Decodes postings of the k-gram
+     *
+     * @param gram index of the k-gram in grams array
+     * @return sorted term IDs
+     */
+    private int[] decode(int gram) {
+        int[] termIDs = new int[counts[gram]];
+        int pos = starts[gram];
+        int termID = -1;
+        for (int i = 0; i < termIDs.length; i++) {
+            termID += VariableByte.read(postings, pos) + 1;
+            pos = VariableByte.skip(postings, pos);
+            termIDs[i] = termID;
+        }
+        return termIDs;
+    }
+
+    /**
+     * Returns IDs of the words, which contain k-gram
+     *
+     * @param gram k chars, $ marks the beginning or the end of a word
+     * @return sorted term IDs
+     */
+    public int[] getTermIDs(String gram) {
+        int index = find(gram);
+        return (index < 0) ? new int[0] : decode(index);
+    }
+
+    /**
+     * Returns the number of words containing k-gram without decoding them
+     *
+     * @param gram k chars, $ marks the beginning or the end of a word
+     * @return number of words
+     */
+    public int count(String gram) {
+        int index = find(gram);
+        return (index < 0) ? 0 : counts[index];
+    }
+
+    /**
+     * Intersects postings of all k-grams in the array.
+     * The shortest postings are decoded first, and every next list is merged into the result
+     * without decoding it into an array, stopping as soon as the result is empty.
+     *
+     * @param kGrams k-grams, all of which the words should contain
+     * @return sorted IDs of the words, which contain all k-grams
+     */
+    public int[] intersect(String[] kGrams) {
+        int n = kGrams.length;
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = find(kGrams[i]);
+            if (indexes[i] < 0) {
+                return new int[0];
+            }
+        }
+        // sort k-grams by the number of words, the rarest first
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) counts[indexes[i]] << 32) | indexes[i];
+        }
+        Arrays.sort(order);
+
+        int[] result = decode((int) order[0]);
+        int size = result.length;
+        for (int i = 1; i < n && size > 0; i++) {
+            int gram = (int) order[i];
+            if (gram == (int) order[i - 1]) {
+                continue;
+            }
+            int pos = starts[gram];
+            int end = starts[gram + 1];
+            int termID = -1;
+            int newSize = 0;
+            for (int j = 0; j < size; ) {
+                if (termID < result[j]) {
+                    if (pos == end) {
+                        break;
+                    }
+                    termID += VariableByte.read(postings, pos) + 1;
+                    pos = VariableByte.skip(postings, pos);
+                } else {
+                    if (termID == result[j]) {
+                        result[newSize++] = termID;
+                    }
+                    j++;
+                }
+            }
+            size = newSize;
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns k-grams of wildcard query, which all matching words should contain:
+     * k-grams of the query extended with boundary marks, which do not contain *
+     *
+     * @param query wildcard query
+     * @return k-grams of the query
+     */
+    public String[] getQueryGrams(String query) {
+        String[] parts = (BOUNDARY + query + BOUNDARY).split("\\" + WILDCARD);
+        int nGrams = 0;
+        for (String part : parts) {
+            nGrams += Math.max(0, part.length() - k + 1);
+        }
+        String[] queryGrams = new String[nGrams];
+        int index = 0;
+        for (String part : parts) {
+            for (int i = 0; i + k <= part.length(); i++) {
+                queryGrams[index++] = part.substring(i, i + k);
+            }
+        }
+        return queryGrams;
+    }
+
+    /**
+     * Returns IDs of the words, which match wildcard query.
+     * Candidates are found by intersecting postings of the query's k-grams,
+     * and then checked against the query, as k-grams may appear in a different order.
+     *
+     * @param query wildcard query
+     * @return sorted IDs of matching words
+     */
+    public int[] wildcardSearch(String query) {
+        String[] queryGrams = getQueryGrams(query);
+        int[] termIDs;
+        if (queryGrams.length > 0) {
+            termIDs = intersect(queryGrams);
+        } else {
+            // query is too short to have a k-gram, all words are candidates
+            termIDs = new int[words.length];
+            for (int i = 0; i < termIDs.length; i++) {
+                termIDs[i] = i;
+            }
+        }
+        int size = 0;
+        for (int termID : termIDs) {
+            if (Utils.matchesWildcard(words[termID], query)) {
+                termIDs[size++] = termID;
+            }
+        }
+        return (size == termIDs.length) ? termIDs : Arrays.copyOf(termIDs, size);
+    }
+
+    public String getWord(int termID) {
+        return words[termID];
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return number of distinct k-grams
+     */
+    public int size() {
+        return grams.length;
+    }
+
+    /**
+     * @return number of bytes k-grams and their postings take up (words are not counted, as they are shared)
+     */
+    public long getSizeInBytes() {
+        return 8L * grams.length + 4L * counts.length + 4L * starts.length + postings.length;
+    }
+}
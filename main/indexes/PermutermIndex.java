@@ -0,0 +1,286 @@
+package main.indexes;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Permuterm index over a fixed array of words.
+ * <p>
+ * Each word w is extended with an end marker ($), and every rotation of w$ is a permuterm.
+ * Permuterms are never created as Strings: every rotation is stored as one long,
+ * <code>termID &lt;&lt; 32 | offset</code>, where termID is the index of the word in the array
+ * and offset is the position in w$ the rotation starts from.
+ * Rotations are sorted as the Strings they represent,
+ * so all permuterms starting with some String form a range, which is found by two binary searches.
+ * <p>
+ * Wildcard query X*Y is answered by searching for permuterms starting with Y$X.
+ */
+public class PermutermIndex implements Serializable {
+
+    public static final char END_OF_WORD = '$';
+    private static final char WILDCARD = '*';
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private String[] words;
+    /** rotations of all words, sorted as Strings */
+    private long[] rotations;
+
+    /**
+     * Builds index of all rotations of the words
+     *
+     * @param words words to index, their indexes are used as term IDs
+     */
+    public PermutermIndex(String[] words) {
+        this.words = words;
+        int nRotations = 0;
+        for (String word : words) {
+            nRotations += word.length() + 1;
+        }
+        this.rotations = new long[nRotations];
+        int index = 0;
+        for (int termID = 0; termID < words.length; termID++) {
+            for (int offset = 0, len = words[termID].length(); offset <= len; offset++) {
+                rotations[index++] = ((long) termID << 32) | offset;
+            }
+        }
+        sort(rotations, new long[nRotations], 0, nRotations - 1);
+    }
+
+    private static int termID(long rotation) {
+        return (int) (rotation >>> 32);
+    }
+
+    private static int offset(long rotation) {
+        return (int) (rotation & OFFSET_MASK);
+    }
+
+    /**
+     * Returns i-th char of the rotation
+     *
+     * @param word   word the rotation is made of
+     * @param offset position in word$ the rotation starts from
+     * @param i      index of the char in the rotation (smaller than word's length + 1)
+     * @return char of the rotation
+     */
+    private static char charAt(String word, int offset, int i) {
+        int len = word.length();
+        int pos = offset + i;
+        if (pos > len) {
+            pos -= len + 1;
+        }
+        return (pos == len) ? END_OF_WORD : word.charAt(pos);
+    }
+
+    /**
+     * Compares rotations as the Strings they represent
+     */
+    private int compare(long rotation1, long rotation2) {
+        String word1 = words[termID(rotation1)];
+        String word2 = words[termID(rotation2)];
+        int offset1 = offset(rotation1);
+        int offset2 = offset(rotation2);
+        int len1 = word1.length() + 1;
+        int len2 = word2.length() + 1;
+        for (int i = 0, len = Math.min(len1, len2); i < len; i++) {
+            char chr1 = charAt(word1, offset1, i);
+            char chr2 = charAt(word2, offset2, i);
+            if (chr1 != chr2) {
+                return chr1 - chr2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Compares the beginning of the rotation with the permuterm
+     *
+     * @return 0 if rotation starts with permuterm, otherwise the result of comparing them as Strings
+     */
+    private int compare(long rotation, String permuterm) {
+        String word = words[termID(rotation)];
+        int offset = offset(rotation);
+        int rotationLength = word.length() + 1;
+        int permutermLength = permuterm.length();
+        for (int i = 0, len = Math.min(rotationLength, permutermLength); i < len; i++) {
+            char chr1 = charAt(word, offset, i);
+            char chr2 = permuterm.charAt(i);
+            if (chr1 != chr2) {
+                return chr1 - chr2;
+            }
+        }
+        return (rotationLength < permutermLength) ? -1 : 0;
+    }
+
+    /**
+     * Sorts rotations by dividing the array in halves, sorting and merging them.
+     *
+     * @param arr array to sort
+     * @param aux auxiliary array of the same length
+     * @param lo  index to start sorting from
+     * @param hi  index to end sorting on (inclusively)
+     */
+    private void sort(long[] arr, long[] aux, int lo, int hi) {
+        if (hi <= lo) {
+            return;
+        }
+        int mid = lo + (hi - lo) / 2;
+        sort(arr, aux, lo, mid);
+        sort(arr, aux, mid + 1, hi);
+        if (compare(arr[mid], arr[mid + 1]) <= 0) {
+            // halves are already in order
+            return;
+        }
+        System.arraycopy(arr, lo, aux, lo, hi - lo + 1);
+        int i = lo;
+        int j = mid + 1;
+        for (int k = lo; k <= hi; k++) {
+            if (i > mid) {
+                arr[k] = aux[j++];
+            } else if (j > hi) {
+                arr[k] = aux[i++];
+            } else if (compare(aux[j], aux[i]) < 0) {
+                arr[k] = aux[j++];
+            } else {
+                arr[k] = aux[i++];
+            }
+        }
+    }
+
+    /**
+     * Finds the index of the first rotation, for which comparison with permuterm
+     * gives result greater than (or equal to, if inclusive) zero
+     */
+    private int bound(String permuterm, boolean inclusive) {
+        int lo = 0;
+        int hi = rotations.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(rotations[mid], permuterm);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns IDs of the words, which have rotations starting with permuterm.
+     *
+     * @param permuterm the String rotations should start with
+     * @return sorted IDs of the words without duplicates
+     */
+    public int[] search(String permuterm) {
+        int from = bound(permuterm, true);
+        int to = bound(permuterm, false);
+        int[] termIDs = new int[to - from];
+        for (int i = from; i < to; i++) {
+            termIDs[i - from] = termID(rotations[i]);
+        }
+        Arrays.sort(termIDs);
+        // remove duplicates, as a word can have several rotations starting with permuterm
+        int size = 0;
+        for (int i = 0; i < termIDs.length; i++) {
+            if (size == 0 || termIDs[size - 1] != termIDs[i]) {
+                termIDs[size++] = termIDs[i];
+            }
+        }
+        return (size == termIDs.length) ? termIDs : Arrays.copyOf(termIDs, size);
+    }
+
+    /**
+     * Returns number of rotations starting with permuterm without collecting them
+     *
+     * @param permuterm the String rotations should start with
+     * @return number of rotations
+     */
+    public int count(String permuterm) {
+        return bound(permuterm, false) - bound(permuterm, true);
+    }
+
+    /**
+     * Converts wildcard query X*Y (or X*Z*Y) to the permuterm Y$X,
+     * all the words matching the query have rotations starting with it.
+     * Query without * is converted to $X, which also matches longer words starting with X.
+     *
+     * @param query wildcard query
+     * @return permuterm to search for
+     */
+    public static String toPermuterm(String query) {
+        int first = query.indexOf(WILDCARD);
+        if (first < 0) {
+            return END_OF_WORD + query;
+        }
+        int last = query.lastIndexOf(WILDCARD);
+        return query.substring(last + 1) + END_OF_WORD + query.substring(0, first);
+    }
+
+    /**
+     * Returns IDs of the words, which match wildcard query with any number of *.
+     * Words are found by the permuterm of the query and, if there are more than one *,
+     * filtered by the parts between them.
+     *
+     * @param query wildcard query
+     * @return sorted IDs of matching words
+     */
+    public int[] wildcardSearch(String query) {
+        int[] termIDs = search(toPermuterm(query));
+        int first = query.indexOf(WILDCARD);
+        int last = query.lastIndexOf(WILDCARD);
+        if (first < 0) {
+            // only the word equal to the query matches
+            int termID = -1;
+            for (int candidate : termIDs) {
+                if (words[candidate].length() == query.length()) {
+                    termID = candidate;
+                }
+            }
+            return (termID < 0) ? new int[0] : new int[]{termID};
+        }
+        if (first == last) {
+            return termIDs;
+        }
+        String[] middle = query.substring(first + 1, last).split("\\" + WILDCARD);
+        int size = 0;
+        for (int termID : termIDs) {
+            if (containsInOrder(words[termID], first, words[termID].length() - (query.length() - last - 1), middle)) {
+                termIDs[size++] = termID;
+            }
+        }
+        return Arrays.copyOf(termIDs, size);
+    }
+
+    /**
+     * Checks if parts are found in the word between from and to one after another
+     */
+    private static boolean containsInOrder(String word, int from, int to, String[] parts) {
+        int pos = from;
+        for (String part : parts) {
+            int found = word.indexOf(part, pos);
+            if (found < 0 || found + part.length() > to) {
+                return false;
+            }
+            pos = found + part.length();
+        }
+        return true;
+    }
+
+    public String getWord(int termID) {
+        return words[termID];
+    }
+
+    /**
+     * @return number of stored rotations
+     */
+    public int size() {
+        return rotations.length;
+    }
+
+    /**
+     * @return number of bytes the rotations take up (words are not counted, as they are shared)
+     */
+    public long getSizeInBytes() {
+        return 8L * rotations.length;
+    }
+}
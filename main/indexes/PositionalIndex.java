@@ -1,60 +1,94 @@
 package main.indexes;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.LinkedList;
-
+import java.util.Arrays;
+
+/**
+ * List of document IDs with positions of a term in each document.
+ * <p>
+ * Positions of all nodes are stored in one shared array (arena): each node owns a slice of it,
+ * given by the start index and the number of positions. Inside a slice the first position is stored as is,
+ * the others as differences from the previous position.
+ */
 public class PositionalIndex implements Serializable {
 
     private Node first;
     private Node last;
     private int size;
+    /** delta-encoded positions of all nodes, in order of the nodes */
+    private int[] positions;
+    private int nPositions;
+    /** the greatest position of the last node, next positions of this node are encoded relative to it */
+    private int lastPos;
+
+    private static final int INITIAL_CAPACITY = 4;
 
     public class Node implements Serializable {
         Node next;
         Node skip;
         int ID;
-        LinkedList<Integer> positions;
+        /** index of the first position of this node in the arena */
+        int start;
+        /** number of positions of this node */
+        int count;
 
         private Node(int ID) {
-            this(ID, null);
-        }
-
-        private Node(int ID, LinkedList<Integer> positions) {
             this.next = null;
             this.skip = null;
             this.ID = ID;
-            this.positions = positions;
+            this.start = nPositions;
+            this.count = 0;
         }
 
         public int getID() {
             return ID;
         }
 
-        public LinkedList<Integer> getPositions() {
-            return positions;
+        /**
+         * @return number of positions in the document
+         */
+        public int getCount() {
+            return count;
         }
 
-        private void add(int pos) {
-            if (positions == null) {
-                positions = new LinkedList<Integer>();
+        /**
+         * Decodes positions of this node
+         *
+         * @return sorted positions in the document
+         */
+        public int[] getPositions() {
+            int[] res = new int[count];
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                pos += positions[start + i];
+                res[i] = pos;
             }
-            positions.add(pos);
+            return res;
         }
 
         public int getFirst() {
-            return positions.getFirst();
+            if (count == 0) {
+                throw new IllegalStateException("Node " + ID + " has no positions");
+            }
+            return positions[start];
+        }
+
+        private PositionalIndex getIndex() {
+            return PositionalIndex.this;
         }
 
         public String toString() {
-            if (positions == null) {
+            if (count == 0) {
                 return new String("ID: " + ID + " ");
             }
-            String res = new String();
-            res += "ID: " + ID + ", size: " + positions.size() + ", pos: ";
-            for (Integer i : positions) {
-                res += i + ", ";
+            StringBuilder res = new StringBuilder();
+            res.append("ID: ").append(ID).append(", size: ").append(count).append(", pos: ");
+            for (int pos : getPositions()) {
+                res.append(pos).append(", ");
             }
-            return res;
+            return res.toString();
         }
     }
 
@@ -70,14 +104,7 @@ public class PositionalIndex implements Serializable {
      * @param id
      */
     public void addLast(int id) {
-        Node oldLast = last;
-        last = new Node(id);
-        if (isEmpty()) {
-            first = last;
-        } else {
-            oldLast.next = last;
-        }
-        size++;
+        linkLast(new Node(id));
     }
 
     /**
@@ -88,7 +115,7 @@ public class PositionalIndex implements Serializable {
      */
     public void addLast(int ID, int pos) {
         if (!isEmpty() && last.ID == ID) {
-            last.positions.add(pos);
+            appendPosition(last, pos);
         } else {
             addLastNode(ID, pos);
         }
@@ -100,54 +127,53 @@ public class PositionalIndex implements Serializable {
      * @param pos
      */
     public void addLastNode(int ID, int pos) {
-        assert(!isEmpty() && ID > last.ID);
-        Node oldLast = last;
-        last = new Node(ID);
-        last.add(pos);
-        if (isEmpty()) {
-            first = last;
-        } else {
-            oldLast.next = last;
-        }
-        size++;
+        assert(isEmpty() || ID > last.ID);
+        Node node = new Node(ID);
+        appendPosition(node, pos);
+        linkLast(node);
     }
 
     /**
-     * Adds new specified node to the end of the list
+     * Adds a copy of specified node to the end of the list.
+     * The node may belong to another index.
      * @param node
      */
     public void addLast(Node node) {
-        assert(node.ID > last.ID);
-        Node oldLast = last;
-        last = node;
-        if (isEmpty()) {
-            first = last;
-        } else {
-            oldLast.next = last;
-        }
-        size++;
+        assert(isEmpty() || node.ID > last.ID);
+        Node copy = new Node(node.ID);
+        int[] from = node.getIndex().positions;
+        ensureCapacity(nPositions + node.count);
+        System.arraycopy(from, node.start, positions, nPositions, node.count);
+        nPositions += node.count;
+        copy.count = node.count;
+        lastPos = lastPosition(copy);
+        linkLast(copy);
     }
 
     /**
      * Add new Node to the end of the list
      *
      * @param ID id the new node will have
-     * @param positions list of positions new node will have
+     * @param positions sorted positions new node will have
+     * @param count number of positions to take from the array
      */
-    public void addLastNode(int ID, LinkedList<Integer> positions) {
-        assert(!isEmpty() && ID > last.ID);
-        Node oldLast = last;
-        last = new Node(ID, positions);
-        if (isEmpty()) {
-            first = last;
-        } else {
-            oldLast.next = last;
+    public void addLastNode(int ID, int[] positions, int count) {
+        assert(isEmpty() || ID > last.ID);
+        Node node = new Node(ID);
+        ensureCapacity(nPositions + count);
+        int prevPos = 0;
+        for (int i = 0; i < count; i++) {
+            this.positions[nPositions++] = positions[i] - prevPos;
+            prevPos = positions[i];
         }
-        size++;
+        node.count = count;
+        lastPos = prevPos;
+        linkLast(node);
     }
 
     /**
-     * Finds Node with specified id and adds specified position to it
+     * Finds Node with specified id and adds specified position to it.
+     * The position should be greater than the positions the node already has.
      *
      * @param id id to addLastNode pos to
      * @param pos position in doc with specified ID to addLastNode
@@ -157,13 +183,75 @@ public class PositionalIndex implements Serializable {
         while (itr.hasNext()) {
             Node curr = itr.next();
             if (curr.ID == id) {
-                curr.add(pos);
+                if (curr == last) {
+                    appendPosition(curr, pos);
+                    return true;
+                }
+                // make room for the position right after the node's slice
+                int end = curr.start + curr.count;
+                ensureCapacity(nPositions + 1);
+                System.arraycopy(positions, end, positions, end + 1, nPositions - end);
+                positions[end] = (curr.count == 0) ? pos : pos - lastPosition(curr);
+                nPositions++;
+                curr.count++;
+                for (Node node = curr.next; node != null; node = node.next) {
+                    node.start++;
+                }
                 return true;
             }
         }
         return false;
     }
 
+    private void linkLast(Node node) {
+        Node oldLast = last;
+        last = node;
+        if (isEmpty()) {
+            first = last;
+        } else {
+            oldLast.next = last;
+        }
+        size++;
+    }
+
+    /**
+     * Appends position to the last slice of the arena, which should belong to the last node
+     * or to a new node, which is about to become the last
+     */
+    private void appendPosition(Node node, int pos) {
+        assert(node.start + node.count == nPositions);
+        ensureCapacity(nPositions + 1);
+        positions[nPositions++] = (node.count == 0) ? pos : pos - lastPos;
+        node.count++;
+        lastPos = pos;
+    }
+
+    private int lastPosition(Node node) {
+        int pos = 0;
+        for (int i = node.start, end = node.start + node.count; i < end; i++) {
+            pos += positions[i];
+        }
+        return pos;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (positions == null) {
+            positions = new int[Math.max(capacity, INITIAL_CAPACITY)];
+        } else if (capacity > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+        }
+    }
+
+    /**
+     * Writes the arena without its unused capacity
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (positions != null && positions.length > nPositions) {
+            positions = Arrays.copyOf(positions, nPositions);
+        }
+        out.defaultWriteObject();
+    }
+
     public void addSkips() {
         int step = (int) Math.round(Math.sqrt(size));
         int stepCounter = 0;
@@ -274,23 +362,23 @@ public class PositionalIndex implements Serializable {
             return current != null;
         }
 
-        public Integer next() {
-            Integer val = current.ID;
+        public int next() {
+            int val = current.ID;
             current = current.next;
             return val;
         }
 
-        public Integer peek() {
+        public int peek() {
             return current.ID;
         }
 
-        public Integer skip() {
-            Integer val = current.skip.ID;
+        public int skip() {
+            int val = current.skip.ID;
             current = current.skip;
             return val;
         }
 
-        public Integer skipPeek() {
+        public int skipPeek() {
             return current.skip.ID;
         }
 
@@ -0,0 +1,35 @@
+package main.indexes;
+
+/**
+ * Iterator over documents of a posting list with positions in each document
+ */
+public interface PositionsIterator {
+
+    /**
+     * Moves to the next document
+     *
+     * @return false if there are no more documents
+     */
+    boolean nextDoc();
+
+    /**
+     * Moves to the first document with ID not smaller than target.
+     * Does not move if the current document already satisfies it.
+     *
+     * @param target document ID to look for
+     * @return false if there is no such document
+     */
+    boolean advance(int target);
+
+    int getDocID();
+
+    /**
+     * @return number of positions in the current document
+     */
+    int getFrequency();
+
+    /**
+     * @return sorted positions in the current document
+     */
+    int[] getPositions();
+}
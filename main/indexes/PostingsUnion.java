@@ -0,0 +1,137 @@
+package main.indexes;
+
+/**
+ * Unites document IDs of many positional indexes without boxing them.
+ * <p>
+ * If the result is expected to be dense, IDs are set in a bitmap, one bit per document,
+ * which is then read in order. Otherwise, lists are merged with a heap of their current IDs.
+ * The cheaper method is chosen by comparing the size of the bitmap
+ * to the number of heap operations needed.
+ */
+public class PostingsUnion {
+
+    private static final int BITS_PER_WORD = 64;
+
+    private PostingsUnion() {
+    }
+
+    /**
+     * Returns all IDs, which are contained in at least one of the indexes
+     *
+     * @param indexes indexes to unite, null elements are ignored
+     * @param nDocs   number of documents, all IDs are smaller than it
+     * @return sorted IDs without duplicates
+     */
+    public static int[] union(PositionalIndex[] indexes, int nDocs) {
+        long nPostings = 0;
+        int nLists = 0;
+        for (PositionalIndex index : indexes) {
+            if (index != null && !index.isEmpty()) {
+                nPostings += index.size();
+                nLists++;
+            }
+        }
+        if (nLists == 0) {
+            return new int[0];
+        }
+        long bitmapCost = nPostings + nDocs / BITS_PER_WORD;
+        long heapCost = nPostings * (32 - Integer.numberOfLeadingZeros(nLists));
+        if (bitmapCost <= heapCost) {
+            return bitmapUnion(indexes, nDocs);
+        }
+        return heapUnion(indexes, nLists, (int) Math.min(nPostings, nDocs));
+    }
+
+    private static int[] bitmapUnion(PositionalIndex[] indexes, int nDocs) {
+        long[] bitmap = new long[(nDocs + BITS_PER_WORD - 1) / BITS_PER_WORD];
+        for (PositionalIndex index : indexes) {
+            if (index == null) {
+                continue;
+            }
+            PositionalIndex.IDIterator itr = index.idIterator();
+            while (itr.hasNext()) {
+                int ID = itr.next();
+                bitmap[ID >>> 6] |= 1L << ID;
+            }
+        }
+        int size = 0;
+        for (long word : bitmap) {
+            size += Long.bitCount(word);
+        }
+        int[] result = new int[size];
+        int resultIndex = 0;
+        for (int i = 0; i < bitmap.length; i++) {
+            long word = bitmap[i];
+            while (word != 0) {
+                result[resultIndex++] = i * BITS_PER_WORD + Long.numberOfTrailingZeros(word);
+                // clear the lowest set bit
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges lists with a binary min-heap, which stores the current ID of each list
+     *
+     * @param maxSize upper bound of the result's size
+     */
+    private static int[] heapUnion(PositionalIndex[] indexes, int nLists, int maxSize) {
+        int[] heap = new int[nLists];
+        PositionalIndex.IDIterator[] iterators = new PositionalIndex.IDIterator[nLists];
+        int heapSize = 0;
+        for (PositionalIndex index : indexes) {
+            if (index != null && !index.isEmpty()) {
+                iterators[heapSize] = index.idIterator();
+                heap[heapSize] = iterators[heapSize].next();
+                heapSize++;
+            }
+        }
+        // heap elements are sifted together with their iterators
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, iterators, i, heapSize);
+        }
+
+        int[] result = new int[maxSize];
+        int size = 0;
+        while (heapSize > 0) {
+            int ID = heap[0];
+            if (size == 0 || result[size - 1] != ID) {
+                result[size++] = ID;
+            }
+            if (iterators[0].hasNext()) {
+                heap[0] = iterators[0].next();
+            } else {
+                heapSize--;
+                heap[0] = heap[heapSize];
+                iterators[0] = iterators[heapSize];
+            }
+            siftDown(heap, iterators, 0, heapSize);
+        }
+        if (size == result.length) {
+            return result;
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(result, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    private static void siftDown(int[] heap, PositionalIndex.IDIterator[] iterators, int i, int heapSize) {
+        int ID = heap[i];
+        PositionalIndex.IDIterator itr = iterators[i];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= ID) {
+                break;
+            }
+            heap[i] = heap[child];
+            iterators[i] = iterators[child];
+            i = child;
+        }
+        heap[i] = ID;
+        iterators[i] = itr;
+    }
+}
@@ -2,13 +2,10 @@ package main.retrieval;
 
 import main.dictionary.DictionaryList;
 import main.indexes.PositionalIndex;
-import utils.PeekingIntegerIterator;
 import main.Tokenizer;
-import main.Utils;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
 
 public class PhraseRetrieval {
 
@@ -57,42 +54,19 @@ public class PhraseRetrieval {
     }
 
     public File[] queryProximity(String query) throws IOException, ClassNotFoundException {
-        String[] input = Tokenizer.tokenize(query);
-        int inputLen = input.length;
-
-        if (inputLen == 0) {
+        // operators are parsed before tokenizing, which would remove them
+        Proximity.Query parsed = Proximity.Query.parse(query);
+        String[] words = parsed.getWords();
+        int wordsIndex = words.length;
+        if (wordsIndex == 0) {
             return new File[0];
         }
-        if (input[0].charAt(0) == '/') {
-            throw new IllegalArgumentException("Incorrectly formulated query, " +
-                    "/k operator is at the beginning of the query");
-        }
-
-        // tokenize query into words and /k operators
-        String[] words = new String[inputLen];
-        int[] proximities = new int[inputLen];
-        boolean[] ignoreOrder = new boolean[inputLen];
-        int wordsIndex = 0;
-        for (int i = 0; i < inputLen; i++, wordsIndex++) {
-            words[wordsIndex] = input[i].toLowerCase();
-            if (i + 1 < inputLen && input[i + 1].charAt(0) == '/') {
-                try {
-                    int proximity = Integer.parseInt(input[i + 1].substring(1));
-                    proximities[wordsIndex] = proximity;
-                    ignoreOrder[wordsIndex] = true;
-                    // skip next input arr element, because we already processed it (as /k operator)
-                    i++;
-                } catch (NumberFormatException e) {
-                    // not a proximity operator, but a word
-                    // if two words ara separated by space, it's a phrase query, so proximity is 1
-                    proximities[wordsIndex] = 1;
-                    ignoreOrder[wordsIndex] = false;
-                }
-            }
+        int[] proximities = new int[wordsIndex];
+        boolean[] ignoreOrder = new boolean[wordsIndex];
+        for (int i = 0; i + 1 < wordsIndex; i++) {
+            proximities[i] = parsed.getDistance(i);
+            ignoreOrder[i] = !parsed.isOrdered(i);
         }
-        words = Utils.resize(words, wordsIndex);
-        proximities = Utils.resize(proximities, wordsIndex);
-        ignoreOrder = Utils.resize(ignoreOrder, wordsIndex);
 
         // AND all words with regard to /k operators or whitespaces (which mean phrase query)
         PositionalIndex IDs;
@@ -125,28 +99,26 @@ public class PhraseRetrieval {
 
         PositionalIndex res = new PositionalIndex();
         PositionalIndex.NodeIterator itr1 = arg1.nodeIterator();
-        PositionalIndex.NodeIterator itr2 = arg1.nodeIterator();
+        PositionalIndex.NodeIterator itr2 = arg2.nodeIterator();
         while (itr1.hasNext() && itr2.hasNext()) {
             PositionalIndex.Node node1 = itr1.peek();
             PositionalIndex.Node node2 = itr2.peek();
             if (node1.getID() == node2.getID()) {
                 int ID = node1.getID();
-                LinkedList<Integer> positions = andPositions(itr1.next().getPositions(), itr2.next().getPositions(),
+                int[] positions = andPositions(itr1.next().getPositions(), itr2.next().getPositions(),
                         proximity, ignoreOrder);
-                res.addLastNode(ID, positions);
+                if (positions.length > 0) {
+                    res.addLastNode(ID, positions, positions.length);
+                }
             } else if (node1.getID() < node2.getID()) {
-                if (itr1.hasSkip()) {
-                    if (itr1.skipPeek().getID() <= itr2.peek().getID()) {
-                        itr1.skip();
-                    }
+                if (itr1.hasSkip() && itr1.skipPeek().getID() <= itr2.peek().getID()) {
+                    itr1.skip();
                 } else {
                     itr1.next();
                 }
             } else {
-                if (itr2.hasSkip()) {
-                    if (itr2.skipPeek().getID() <= itr1.peek().getID()) {
-                        itr2.skip();
-                    }
+                if (itr2.hasSkip() && itr2.skipPeek().getID() <= itr1.peek().getID()) {
+                    itr2.skip();
                 } else {
                     itr2.next();
                 }
@@ -156,23 +128,13 @@ public class PhraseRetrieval {
         return res;
     }
 
-    LinkedList<Integer> andPositions(LinkedList<Integer> arg1, LinkedList<Integer> arg2, int proximity, boolean ignoreOrder) {
-        LinkedList<Integer> res = new LinkedList<Integer>();
-        PeekingIntegerIterator itr1 = new PeekingIntegerIterator(arg1.iterator());
-        PeekingIntegerIterator itr2 = new PeekingIntegerIterator(arg2.iterator());
-        while (itr1.hasNext() && itr2.hasNext()) {
-            int pos1 = itr1.peek();
-            int pos2 = itr2.peek();
-            if (ignoreOrder ? Math.abs(pos2 - pos1) <= proximity : (pos2 - pos1) <= proximity) {
-                res.add(itr1.next());
-                itr2.next();
-            } else if (pos1 < pos2) {
-                itr1.next();
-            } else {
-                itr2.next();
-            }
-        }
-        return res;
+    /**
+     * Finds positions of the second word within proximity of the first one
+     *
+     * @return matched positions of the second word, so that the next word of the query is compared to them
+     */
+    int[] andPositions(int[] arg1, int[] arg2, int proximity, boolean ignoreOrder) {
+        return Proximity.follow(arg1, arg2, proximity, !ignoreOrder);
     }
 
     public static void main(String[] args) {
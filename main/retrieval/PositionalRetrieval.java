@@ -0,0 +1,386 @@
+package main.retrieval;
+
+import main.Tokenizer;
+import main.compression.CompressedPositionalIndex;
+import main.dictionary.DictionaryTrie;
+import main.indexes.BiwordIndex;
+import main.indexes.PositionsIterator;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Answers phrase queries of any length with compressed positional index.
+ * <p>
+ * Document lists of all words of the phrase are intersected first, starting from the rarest word
+ * and using skips of the lists. Positions are decoded only for documents, which contain all the words,
+ * and the phrase is found by checking that each word is at its offset from the phrase start.
+ * <p>
+ * Optionally, selected pairs of adjacent words are indexed as biwords. When a pair of the phrase
+ * is in the biword index, its list replaces lists of both words, otherwise the words' lists are used.
+ * <p>
+ * Proximity queries and NEAR windows are answered the same way, with {@link Proximity} operators
+ * applied to positions of documents, which contain all the words.
+ */
+public class PositionalRetrieval {
+
+    private DictionaryTrie dic;
+    private CompressedPositionalIndex index;
+    // null if biwords are not indexed
+    private BiwordIndex biwords;
+
+    /** maximum number of common terms, all pairs of which are indexed as biwords */
+    private static final int MAX_COMMON_TERMS = 100;
+
+    /**
+     * @param dic   dictionary, which defines term IDs
+     * @param index positional index with the same term IDs
+     */
+    public PositionalRetrieval(DictionaryTrie dic, CompressedPositionalIndex index) {
+        this.dic = dic;
+        this.index = index;
+    }
+
+    /**
+     * Indexes pairs of adjacent words, which are frequent in the query log or consist of common words
+     *
+     * @param queryLog          previous phrase queries
+     * @param minQueryFrequency minimum number of the pair's occurrences in the query log
+     * @param minDocFrequency   minimum number of documents, which contain each word of the pair
+     */
+    public void buildBiwordIndex(String[] queryLog, int minQueryFrequency, int minDocFrequency) {
+        int[][] loggedTermIDs = new int[queryLog.length][];
+        for (int i = 0; i < queryLog.length; i++) {
+            String[] words = Tokenizer.tokenize(queryLog[i]);
+            loggedTermIDs[i] = new int[words.length];
+            for (int j = 0; j < words.length; j++) {
+                loggedTermIDs[i][j] = dic.getTermID(words[j].toLowerCase());
+            }
+        }
+        long[] pairs = BiwordIndex.selectPairs(loggedTermIDs, minQueryFrequency, index, minDocFrequency, MAX_COMMON_TERMS);
+        biwords = new BiwordIndex(index, pairs);
+    }
+
+    public BiwordIndex getBiwordIndex() {
+        return biwords;
+    }
+
+    public File[] query(String query) {
+        return toFiles(getDocIDs(Tokenizer.tokenize(query)));
+    }
+
+    /**
+     * Answers query with /k (any order) and +k (ordered) operators, words without operator form a phrase
+     *
+     * @param query proximity query
+     * @return files, which contain a match
+     */
+    public File[] queryProximity(String query) {
+        return toFiles(getProximityDocIDs(query));
+    }
+
+    private File[] toFiles(int[] IDs) {
+        File[] files = new File[IDs.length];
+        File[] allFiles = dic.getFiles();
+        for (int i = 0; i < IDs.length; i++) {
+            files[i] = allFiles[IDs[i]];
+        }
+        return files;
+    }
+
+    /**
+     * Returns documents, which contain the words one after another
+     *
+     * @param words words of the phrase
+     * @return sorted document IDs
+     */
+    public int[] getDocIDs(String[] words) {
+        return getDocIDs(getTermIDs(words));
+    }
+
+    /**
+     * Returns documents, which contain the terms one after another
+     *
+     * @param termIDs term IDs of the phrase, in order
+     * @return sorted document IDs
+     */
+    public int[] getDocIDs(int[] termIDs) {
+        int nTerms = termIDs.length;
+        if (nTerms == 0) {
+            return new int[0];
+        }
+        for (int termID : termIDs) {
+            if (termID < 0) {
+                return new int[0];
+            }
+        }
+        // lists of the phrase words or biwords sorted by number of documents, with their offsets in the phrase
+        PositionsIterator[] lists = new PositionsIterator[nTerms];
+        int[] offsets = new int[nTerms];
+        int[] docFrequencies = new int[nTerms];
+        int nLists = 0;
+        for (int i = 0; i < nTerms; ) {
+            int offset = i;
+            PositionsIterator list;
+            int docFrequency;
+            if (biwords != null && i + 1 < nTerms && biwords.contains(termIDs[i], termIDs[i + 1])) {
+                list = biwords.getPostings(termIDs[i], termIDs[i + 1]);
+                docFrequency = biwords.getDocFrequency(termIDs[i], termIDs[i + 1]);
+                i += 2;
+            } else if (biwords != null && i + 1 == nTerms && i > 0 && biwords.contains(termIDs[i - 1], termIDs[i])) {
+                // the last word is covered by the biword with the previous one, which overlaps the previous list
+                offset = i - 1;
+                list = biwords.getPostings(termIDs[i - 1], termIDs[i]);
+                docFrequency = biwords.getDocFrequency(termIDs[i - 1], termIDs[i]);
+                i++;
+            } else {
+                list = index.getPostings(termIDs[i]);
+                docFrequency = index.getDocFrequency(termIDs[i]);
+                i++;
+            }
+            int j = nLists++;
+            for (; j > 0 && docFrequencies[j - 1] > docFrequency; j--) {
+                lists[j] = lists[j - 1];
+                offsets[j] = offsets[j - 1];
+                docFrequencies[j] = docFrequencies[j - 1];
+            }
+            lists[j] = list;
+            offsets[j] = offset;
+            docFrequencies[j] = docFrequency;
+        }
+        lists = Arrays.copyOf(lists, nLists);
+        offsets = Arrays.copyOf(offsets, nLists);
+
+        int[] res = new int[docFrequencies[0]];
+        int resIndex = 0;
+        int[][] positions = new int[nLists][];
+        int[] pointers = new int[nLists];
+        PositionsIterator lead = lists[0];
+        while (lead.nextDoc()) {
+            if (!advanceAll(lists)) {
+                break;
+            }
+            for (int i = 0; i < nLists; i++) {
+                positions[i] = lists[i].getPositions();
+            }
+            if (countPhrases(positions, offsets, pointers) > 0) {
+                res[resIndex++] = lead.getDocID();
+            }
+        }
+        return Arrays.copyOf(res, resIndex);
+    }
+
+    /**
+     * @param query proximity query
+     * @return sorted IDs of documents, which contain a match
+     */
+    public int[] getProximityDocIDs(String query) {
+        Proximity.Query parsed = Proximity.Query.parse(query);
+        return getMatchingDocIDs(getTermIDs(parsed.getWords()), parsed, 0);
+    }
+
+    /**
+     * Finds documents, in which all words are in a window of at most width + 1 words, in any order
+     *
+     * @param words words, a repeated word is counted once
+     * @param width maximum difference between positions of the last and the first word in the window
+     * @return sorted document IDs
+     */
+    public int[] getNearDocIDs(String[] words, int width) {
+        // windows are found among positions of different words, the same positions would make empty windows
+        int[] termIDs = getTermIDs(words);
+        Arrays.sort(termIDs);
+        int size = 0;
+        for (int i = 0; i < termIDs.length; i++) {
+            if (size == 0 || termIDs[i] != termIDs[size - 1]) {
+                termIDs[size++] = termIDs[i];
+            }
+        }
+        return getMatchingDocIDs(Arrays.copyOf(termIDs, size), null, width);
+    }
+
+    /**
+     * Returns matches of the proximity query in the document
+     *
+     * @param query proximity query
+     * @param docID id of the document
+     * @return minimal spans, a start and an end position for each match
+     */
+    public int[] getSpans(String query, int docID) {
+        Proximity.Query parsed = Proximity.Query.parse(query);
+        int[] termIDs = getTermIDs(parsed.getWords());
+        int[][] positions = new int[termIDs.length][];
+        for (int i = 0; i < termIDs.length; i++) {
+            if (termIDs[i] < 0) {
+                return new int[0];
+            }
+            positions[i] = index.getPositions(termIDs[i], docID);
+        }
+        return Proximity.match(parsed, positions);
+    }
+
+    /**
+     * Finds documents with matches of proximity query or, if it is null, NEAR windows of the width
+     */
+    private int[] getMatchingDocIDs(int[] termIDs, Proximity.Query query, int width) {
+        int nTerms = termIDs.length;
+        if (nTerms == 0) {
+            return new int[0];
+        }
+        // lists in order of the query to match positions and sorted by number of documents to intersect them
+        PositionsIterator[] lists = new PositionsIterator[nTerms];
+        PositionsIterator[] sorted = new PositionsIterator[nTerms];
+        int[] docFrequencies = new int[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            if (termIDs[i] < 0) {
+                return new int[0];
+            }
+            lists[i] = index.getPostings(termIDs[i]);
+            int docFrequency = index.getDocFrequency(termIDs[i]);
+            int j = i;
+            for (; j > 0 && docFrequencies[j - 1] > docFrequency; j--) {
+                sorted[j] = sorted[j - 1];
+                docFrequencies[j] = docFrequencies[j - 1];
+            }
+            sorted[j] = lists[i];
+            docFrequencies[j] = docFrequency;
+        }
+
+        int[] res = new int[docFrequencies[0]];
+        int resIndex = 0;
+        int[][] positions = new int[nTerms][];
+        PositionsIterator lead = sorted[0];
+        while (lead.nextDoc()) {
+            if (!advanceAll(sorted)) {
+                break;
+            }
+            for (int i = 0; i < nTerms; i++) {
+                positions[i] = lists[i].getPositions();
+            }
+            int[] spans = (query == null) ? Proximity.near(positions, width) : Proximity.match(query, positions);
+            if (spans.length > 0) {
+                res[resIndex++] = lead.getDocID();
+            }
+        }
+        return Arrays.copyOf(res, resIndex);
+    }
+
+    private int[] getTermIDs(String[] words) {
+        int[] termIDs = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            termIDs[i] = dic.getTermID(words[i].toLowerCase());
+        }
+        return termIDs;
+    }
+
+    /**
+     * Moves all lists to the first document, which is contained in all of them,
+     * starting from the current document of the first list
+     *
+     * @param lists lists, the first one is the rarest
+     * @return false if one of the lists has ended
+     */
+    static boolean advanceAll(PositionsIterator[] lists) {
+        PositionsIterator lead = lists[0];
+        int docID = lead.getDocID();
+        for (int i = 1; i < lists.length; ) {
+            if (!lists[i].advance(docID)) {
+                return false;
+            }
+            if (lists[i].getDocID() > docID) {
+                // the lead is behind, so start over from the document found
+                if (!lead.advance(lists[i].getDocID())) {
+                    return false;
+                }
+                docID = lead.getDocID();
+                i = 1;
+            } else {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts occurrences of the phrase, in which i-th word is at offsets[i] from the start
+     *
+     * @param positions sorted positions of each word in the document
+     * @param offsets   offset of each word in the phrase
+     * @param pointers  array of the same length to use as pointers to positions
+     * @return number of phrase occurrences
+     */
+    static int countPhrases(int[][] positions, int[] offsets, int[] pointers) {
+        // candidate starts are taken from the word with the fewest positions
+        int base = 0;
+        for (int i = 1; i < positions.length; i++) {
+            pointers[i] = 0;
+            if (positions[i].length < positions[base].length) {
+                base = i;
+            }
+        }
+        pointers[0] = 0;
+        int count = 0;
+        for (int basePos : positions[base]) {
+            int start = basePos - offsets[base];
+            boolean found = true;
+            for (int i = 0; i < positions.length && found; i++) {
+                if (i == base) {
+                    continue;
+                }
+                int[] wordPositions = positions[i];
+                int expected = start + offsets[i];
+                int pointer = pointers[i];
+                while (pointer < wordPositions.length && wordPositions[pointer] < expected) {
+                    pointer++;
+                }
+                pointers[i] = pointer;
+                if (pointer == wordPositions.length) {
+                    // all positions of the word are before the next starts
+                    return count;
+                }
+                found = (wordPositions[pointer] == expected);
+            }
+            if (found) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) {
+        File[] files = {
+                new File("files\\docs\\0.txt"),
+                new File("files\\docs\\1.txt"),
+                new File("files\\docs\\2.txt"),
+                new File("files\\docs\\3.txt"),
+                new File("files\\docs\\4.txt"),
+                new File("files\\docs\\5.txt"),
+                new File("files\\docs\\6.txt"),
+                new File("files\\docs\\7.txt")
+        };
+        DictionaryTrie dic = new DictionaryTrie(files);
+        PositionalRetrieval retrieval = new PositionalRetrieval(dic, dic.savePositionalIndex("positions"));
+
+        String[] queries = {
+                "sales rise in july",
+                "sales rise",
+                "in july",
+                "home",
+                "new home sales",
+                "home /3 sales",
+                "sales +2 july"
+        };
+        for (String query : queries) {
+            System.out.println("\n" + query + ": ");
+            File[] res = (query.indexOf('/') >= 0 || query.indexOf('+') >= 0)
+                    ? retrieval.queryProximity(query) : retrieval.query(query);
+            if (res.length == 0) {
+                System.out.println("no documents found");
+            } else {
+                for (File f : res) {
+                    System.out.println(f.getPath());
+                }
+            }
+        }
+    }
+}
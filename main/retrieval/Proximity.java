@@ -0,0 +1,423 @@
+package main.retrieval;
+
+import main.Tokenizer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Proximity operators over sorted positions of words in one document.
+ * <p>
+ * Matches are returned as spans: an int array, in which a match takes two elements, its start and its end
+ * (positions of the first and the last matched word). Only minimal spans are returned, those,
+ * which do not contain another match, so they are sorted by both start and end.
+ * {@link #near} takes time linear in the number of positions. {@link #match} keeps, for every position
+ * of a word, only the minimal spans, which end with it, so it is linear for spans of bounded count.
+ * <p>
+ * Query syntax: words separated by whitespace form a phrase, <code>a /k b</code> means that a and b
+ * are at most k words apart in any order, <code>a +k b</code> means that b follows a within k words.
+ */
+public class Proximity {
+
+    private static final char UNORDERED = '/';
+    private static final char ORDERED = '+';
+    private static final int INITIAL_BUFFER_SIZE = 16;
+
+    private Proximity() {
+    }
+
+    /**
+     * Words of a proximity query and operators between them
+     */
+    public static class Query {
+        private String[] words;
+        /** maximum distance between i-th and (i+1)-th word */
+        private int[] distances;
+        /** true if (i+1)-th word should follow i-th word */
+        private boolean[] ordered;
+
+        private Query(String[] words, int[] distances, boolean[] ordered) {
+            this.words = words;
+            this.distances = distances;
+            this.ordered = ordered;
+        }
+
+        public String[] getWords() {
+            return words;
+        }
+
+        public int getDistance(int i) {
+            return distances[i];
+        }
+
+        public boolean isOrdered(int i) {
+            return ordered[i];
+        }
+
+        /**
+         * Splits query by whitespace, so that operators are not removed by the tokenizer
+         *
+         * @param query query with /k and +k operators
+         * @return parsed query, words are in lower case
+         * @throws IllegalArgumentException if an operator is not between two words
+         */
+        public static Query parse(String query) {
+            String[] tokens = query.trim().split("\\s+");
+            String[] words = new String[tokens.length];
+            int[] distances = new int[tokens.length];
+            boolean[] ordered = new boolean[tokens.length];
+            int nWords = 0;
+            // operator before the next word, a phrase by default
+            int distance = 1;
+            boolean isOrdered = true;
+            boolean hasOperator = false;
+            for (String token : tokens) {
+                int operatorDistance = parseOperator(token);
+                if (operatorDistance >= 0) {
+                    if (nWords == 0 || hasOperator) {
+                        throw new IllegalArgumentException("Incorrectly formulated query, " +
+                                token + " operator is not between two words");
+                    }
+                    distance = operatorDistance;
+                    isOrdered = token.charAt(0) == ORDERED;
+                    hasOperator = true;
+                    continue;
+                }
+                for (String word : Tokenizer.tokenize(token)) {
+                    if (word.isEmpty()) {
+                        continue;
+                    }
+                    if (nWords > 0) {
+                        distances[nWords - 1] = distance;
+                        ordered[nWords - 1] = isOrdered;
+                    }
+                    words[nWords++] = word.toLowerCase();
+                    distance = 1;
+                    isOrdered = true;
+                    hasOperator = false;
+                }
+            }
+            if (hasOperator) {
+                throw new IllegalArgumentException("Incorrectly formulated query, operator is at the end of the query");
+            }
+            return new Query(Arrays.copyOf(words, nWords), Arrays.copyOf(distances, Math.max(0, nWords - 1)),
+                    Arrays.copyOf(ordered, Math.max(0, nWords - 1)));
+        }
+
+        /**
+         * @return distance of /k or +k operator, or -1 if the token is not an operator
+         */
+        private static int parseOperator(String token) {
+            if (token.length() < 2 || (token.charAt(0) != UNORDERED && token.charAt(0) != ORDERED)) {
+                return -1;
+            }
+            try {
+                int distance = Integer.parseInt(token.substring(1));
+                return (distance > 0) ? distance : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Finds positions of the next word, which are within distance from positions of the previous one
+     *
+     * @param from     sorted positions of the previous word
+     * @param to       sorted positions of the next word
+     * @param distance maximum distance between the words
+     * @param ordered  true if the next word should follow the previous one
+     * @return sorted positions of the next word, which have a match
+     */
+    public static int[] follow(int[] from, int[] to, int distance, boolean ordered) {
+        int[] res = new int[to.length];
+        int size = 0;
+        // index of the first previous position, which is not before the current one
+        int next = 0;
+        for (int pos : to) {
+            while (next < from.length && from[next] < pos) {
+                next++;
+            }
+            boolean found = next > 0 && pos - from[next - 1] <= distance;
+            if (!found && !ordered) {
+                // the same position can only be the same word
+                int after = (next < from.length && from[next] == pos) ? next + 1 : next;
+                found = after < from.length && from[after] - pos <= distance;
+            }
+            if (found) {
+                res[size++] = pos;
+            }
+        }
+        return Arrays.copyOf(res, size);
+    }
+
+    /**
+     * Finds windows, which contain all words, with a sweep over positions:
+     * the list with the smallest current position is advanced, and every window [smallest, greatest],
+     * after which the greatest position grows, is minimal.
+     * Words should be different, so that their positions are different.
+     *
+     * @param positions sorted positions of each word
+     * @param width     maximum difference between the last and the first position of a window
+     * @return minimal spans
+     */
+    public static int[] near(int[][] positions, int width) {
+        int nWords = positions.length;
+        if (nWords == 0) {
+            return new int[0];
+        }
+        int total = 0;
+        for (int[] wordPositions : positions) {
+            if (wordPositions.length == 0) {
+                return new int[0];
+            }
+            total += wordPositions.length;
+        }
+        int[] pointers = new int[nWords];
+        // minimal windows have different starts
+        int[] spans = new int[2 * total];
+        int size = 0;
+        int prevStart = -1;
+        int prevEnd = -1;
+        while (true) {
+            int minWord = 0;
+            int max = positions[0][pointers[0]];
+            for (int i = 1; i < nWords; i++) {
+                int pos = positions[i][pointers[i]];
+                if (pos < positions[minWord][pointers[minWord]]) {
+                    minWord = i;
+                }
+                if (pos > max) {
+                    max = pos;
+                }
+            }
+            int min = positions[minWord][pointers[minWord]];
+            if (prevStart >= 0 && max > prevEnd) {
+                // the previous window is minimal, because windows after it end later
+                size = addSpan(spans, size, prevStart, prevEnd, width);
+            }
+            prevStart = min;
+            prevEnd = max;
+            if (++pointers[minWord] == positions[minWord].length) {
+                break;
+            }
+        }
+        size = addSpan(spans, size, prevStart, prevEnd, width);
+        return Arrays.copyOf(spans, size);
+    }
+
+    private static int addSpan(int[] spans, int size, int start, int end, int width) {
+        if (end - start > width) {
+            return size;
+        }
+        spans[size++] = start;
+        spans[size++] = end;
+        return size;
+    }
+
+    /**
+     * Sorts spans and removes those, which contain other spans, as well as repeated ones
+     *
+     * @param spans spans as start in the high half and end in the low half of a long
+     * @return number of spans left at the beginning of the array
+     */
+    private static int removeContaining(long[] spans, int size) {
+        Arrays.sort(spans, 0, size);
+        int resSize = 0;
+        for (int i = 0; i < size; i++) {
+            int start = (int) (spans[i] >>> 32);
+            int end = (int) spans[i];
+            // spans are sorted by start, so a previous span can contain this one only if it ends later
+            while (resSize > 0 && (int) spans[resSize - 1] >= end) {
+                resSize--;
+            }
+            if (resSize > 0 && (int) (spans[resSize - 1] >>> 32) == start) {
+                // the same start with an earlier end is already kept
+                continue;
+            }
+            spans[resSize++] = spans[i];
+        }
+        return resSize;
+    }
+
+    private static long toSpan(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    /**
+     * Finds matches of the whole query in one document.
+     * Each operator relates two neighbouring words of the query, so words are matched one by one.
+     * For every position of the current word all minimal spans of the words before it, which end
+     * with this position, are kept: a span, which contains another one with the same last position,
+     * can only be extended to a span, which contains an extension of the other one.
+     *
+     * @param query     parsed query
+     * @param positions sorted positions of each word of the query
+     * @return minimal spans of the whole query, sorted
+     */
+    public static int[] match(Query query, int[][] positions) {
+        if (positions.length == 0) {
+            return new int[0];
+        }
+        int[] matched = positions[0];
+        long[][] spans = new long[matched.length][];
+        for (int i = 0; i < matched.length; i++) {
+            spans[i] = new long[]{toSpan(matched[i], matched[i])};
+        }
+        int size = matched.length;
+        long[] buffer = new long[INITIAL_BUFFER_SIZE];
+        for (int word = 1; word < positions.length && size > 0; word++) {
+            int distance = query.distances[word - 1];
+            boolean ordered = query.ordered[word - 1];
+            int[] to = positions[word];
+            int[] next = new int[to.length];
+            long[][] nextSpans = new long[to.length][];
+            int nextSize = 0;
+            // matched positions of the previous word within distance are from lo to hi, exclusive
+            int lo = 0;
+            int hi = 0;
+            for (int pos : to) {
+                while (lo < size && matched[lo] < pos - distance) {
+                    lo++;
+                }
+                int last = ordered ? pos - 1 : pos + distance;
+                while (hi < size && matched[hi] <= last) {
+                    hi++;
+                }
+                int nSpans = 0;
+                for (int i = lo; i < hi; i++) {
+                    if (matched[i] == pos) {
+                        // the same position can only be the same word
+                        continue;
+                    }
+                    if (nSpans + spans[i].length > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, nSpans + spans[i].length));
+                    }
+                    for (long span : spans[i]) {
+                        int start = (int) (span >>> 32);
+                        int end = (int) span;
+                        buffer[nSpans++] = toSpan(Math.min(start, pos), Math.max(end, pos));
+                    }
+                }
+                if (nSpans == 0) {
+                    continue;
+                }
+                next[nextSize] = pos;
+                nextSpans[nextSize++] = Arrays.copyOf(buffer, removeContaining(buffer, nSpans));
+            }
+            matched = next;
+            spans = nextSpans;
+            size = nextSize;
+        }
+
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += spans[i].length;
+        }
+        long[] all = new long[total];
+        int nAll = 0;
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(spans[i], 0, all, nAll, spans[i].length);
+            nAll += spans[i].length;
+        }
+        nAll = removeContaining(all, nAll);
+        int[] res = new int[2 * nAll];
+        for (int i = 0; i < nAll; i++) {
+            res[2 * i] = (int) (all[i] >>> 32);
+            res[2 * i + 1] = (int) all[i];
+        }
+        return res;
+    }
+
+    /**
+     * Finds minimal spans by trying every combination of positions, to check {@link #match}
+     */
+    private static int[] matchBruteForce(Query query, int[][] positions) {
+        TreeSet<Long> spans = new TreeSet<Long>();
+        collectSpans(query, positions, 0, new int[positions.length], spans);
+        int[] res = new int[2 * spans.size()];
+        int size = 0;
+        for (long span : spans) {
+            // a span is minimal, if no other span lies inside it
+            boolean isMinimal = true;
+            for (long other : spans) {
+                if (other != span && (other >>> 32) >= (span >>> 32) && (int) other <= (int) span) {
+                    isMinimal = false;
+                    break;
+                }
+            }
+            if (isMinimal) {
+                res[size++] = (int) (span >>> 32);
+                res[size++] = (int) span;
+            }
+        }
+        return Arrays.copyOf(res, size);
+    }
+
+    private static void collectSpans(Query query, int[][] positions, int word, int[] chosen, TreeSet<Long> spans) {
+        if (word == positions.length) {
+            int start = Integer.MAX_VALUE;
+            int end = -1;
+            for (int pos : chosen) {
+                start = Math.min(start, pos);
+                end = Math.max(end, pos);
+            }
+            spans.add(toSpan(start, end));
+            return;
+        }
+        for (int pos : positions[word]) {
+            if (word > 0) {
+                int diff = pos - chosen[word - 1];
+                int distance = query.distances[word - 1];
+                if (query.ordered[word - 1] ? (diff <= 0 || diff > distance)
+                        : (diff == 0 || Math.abs(diff) > distance)) {
+                    continue;
+                }
+            }
+            chosen[word] = pos;
+            collectSpans(query, positions, word + 1, chosen, spans);
+        }
+    }
+
+    public static void main(String[] args) {
+        // the nearest position of the previous word does not always give a minimal span
+        Query example = Query.parse("w0 /3 w1");
+        int[][] examplePositions = {{0, 8, 9, 12}, {1, 3, 4, 7, 10}};
+        System.out.println("w0 /3 w1: " + Arrays.toString(match(example, examplePositions)));
+
+        // compare with brute force on random ordered and unordered chains
+        Random random = new Random(1);
+        int nCases = 20000;
+        int nMismatches = 0;
+        for (int i = 0; i < nCases; i++) {
+            int nWords = 2 + random.nextInt(3);
+            StringBuilder query = new StringBuilder("w0");
+            for (int word = 1; word < nWords; word++) {
+                query.append(random.nextBoolean() ? " /" : " +").append(1 + random.nextInt(4)).append(" w").append(word);
+            }
+            Query parsed = Query.parse(query.toString());
+            // every position of the document belongs to at most one word
+            int[][] positions = new int[nWords][];
+            int[] sizes = new int[nWords];
+            int length = 10 + random.nextInt(30);
+            for (int word = 0; word < nWords; word++) {
+                positions[word] = new int[length];
+            }
+            for (int pos = 0; pos < length; pos++) {
+                if (random.nextInt(3) > 0) {
+                    int word = random.nextInt(nWords);
+                    positions[word][sizes[word]++] = pos;
+                }
+            }
+            for (int word = 0; word < nWords; word++) {
+                positions[word] = Arrays.copyOf(positions[word], sizes[word]);
+            }
+            if (!Arrays.equals(match(parsed, positions), matchBruteForce(parsed, positions))) {
+                nMismatches++;
+                System.out.println(query + " " + Arrays.deepToString(positions));
+            }
+        }
+        System.out.println(nMismatches + " mismatches in " + nCases + " random queries");
+    }
+}
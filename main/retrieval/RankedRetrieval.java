@@ -0,0 +1,570 @@
+package main.retrieval;
+
+import main.BM25;
+import main.Tokenizer;
+import main.Utils;
+import main.compression.CompressedIndex;
+import main.compression.ImpactOrderedIndex;
+import main.dictionary.DictionarySPIMI;
+import main.indexes.ChampionLists;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Ranks documents of the SPIMI index by BM25 and returns the best k of them.
+ * <p>
+ * Queries are disjunctive: a document is scored, if it contains at least one query term.
+ * Besides exhaustive term-at-a-time accumulation, documents can be evaluated document at a time
+ * with dynamic pruning, which returns the same documents, but skips most postings,
+ * which can not get into the best k:
+ * - 	WAND skips documents, for which the sum of maximum scores of their terms is not above the threshold
+ * (the k-th best score so far);
+ * - 	Block-Max WAND also checks maximum scores of blocks from the skip table of {@link CompressedIndex},
+ * which are much tighter, and skips whole blocks;
+ * - 	MaxScore splits terms into essential and non-essential ones: documents, which contain only
+ * non-essential terms, can not get into the best k, so only essential terms choose documents to score.
+ * It does not sort iterators for every document, so it suits long queries better than WAND.
+ * <p>
+ * With an {@link ImpactOrderedIndex} queries can also be evaluated score at a time:
+ * segments of all query terms are processed from the highest impact to the lowest,
+ * and evaluation can be stopped after a budget of postings, which bounds the time of a query.
+ * Scores are then sums of quantized impacts, so the result is approximate even without a budget.
+ * <p>
+ * With {@link ChampionLists} only documents of champion lists of common query terms
+ * (and of full lists of other terms) are scored, which is approximate too, but scores are exact.
+ */
+public class RankedRetrieval {
+
+    /**
+     * Evaluation strategy of a query
+     */
+    public enum Mode {
+        TERM_AT_A_TIME,
+        WAND,
+        BLOCK_MAX_WAND,
+        MAX_SCORE,
+        /** score at a time over the impact ordered index without a budget */
+        SCORE_AT_A_TIME,
+        /** only documents of champion lists, if there are at least k of them */
+        CHAMPIONS
+    }
+
+    private DictionarySPIMI dic;
+    private CompressedIndex postings;
+    private BM25 scorer;
+    private int nDocs;
+    private ImpactOrderedIndex impactIndex;
+    private ChampionLists championLists;
+
+    public RankedRetrieval(DictionarySPIMI dic) {
+        this(dic, dic.getPostings());
+    }
+
+    /**
+     * Searches other postings of the same collection, for example, a statically pruned index.
+     * Document frequencies are still taken from the full index of the dictionary,
+     * so that scores do not change, because postings were removed.
+     *
+     * @param dic      dictionary of the collection
+     * @param postings index to search
+     */
+    public RankedRetrieval(DictionarySPIMI dic, CompressedIndex postings) {
+        this.dic = dic;
+        this.postings = postings;
+        this.scorer = postings.getScorer();
+        this.nDocs = dic.getnFiles();
+        if (scorer == null) {
+            int[] docLengths = new int[nDocs];
+            for (int ID = 0; ID < nDocs; ID++) {
+                docLengths[ID] = dic.getDocLength(ID);
+            }
+            this.scorer = new BM25(docLengths);
+        }
+    }
+
+    /**
+     * @param query query words, separated by whitespace or punctuation
+     * @param k     number of documents to return
+     * @return k documents with the highest scores
+     */
+    public File[] query(String query, int k) {
+        int[] IDs = search(query, k).getDocIDs();
+        File[] files = new File[IDs.length];
+        for (int i = 0; i < IDs.length; i++) {
+            files[i] = dic.getFile(IDs[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Evaluates the query with Block-Max WAND
+     *
+     * @param query query words, separated by whitespace or punctuation
+     * @param k     number of documents to return
+     * @return IDs and scores of k documents with the highest scores
+     */
+    public TopDocs search(String query, int k) {
+        return search(query, k, Mode.BLOCK_MAX_WAND);
+    }
+
+    /**
+     * @param query query words, separated by whitespace or punctuation
+     * @param k     number of documents to return
+     * @param mode  evaluation strategy
+     * @return IDs and scores of k documents with the highest scores
+     */
+    public TopDocs search(String query, int k, Mode mode) {
+        return search(getTermIDs(query), k, mode);
+    }
+
+    /**
+     * @param termIDs IDs of query terms, a repeated term adds to scores again
+     * @param k       number of documents to return
+     * @param mode    evaluation strategy
+     * @return IDs and scores of k documents with the highest scores
+     */
+    public TopDocs search(int[] termIDs, int k, Mode mode) {
+        switch (mode) {
+            case WAND:
+                return wand(termIDs, k, false);
+            case BLOCK_MAX_WAND:
+                return wand(termIDs, k, true);
+            case MAX_SCORE:
+                return maxScore(termIDs, k);
+            case SCORE_AT_A_TIME:
+                return scoreAtATime(termIDs, k, Long.MAX_VALUE);
+            case CHAMPIONS:
+                return champions(termIDs, k);
+            default:
+                return termAtATime(termIDs, k);
+        }
+    }
+
+    /**
+     * Writes postings in impact order, which is needed for score-at-a-time evaluation
+     *
+     * @param filepath filepath to the new index
+     */
+    public void buildImpactIndex(String filepath) {
+        float[] idfs = new float[postings.size()];
+        for (int termID = 0; termID < idfs.length; termID++) {
+            idfs[termID] = idf(termID);
+        }
+        impactIndex = new ImpactOrderedIndex(postings, scorer, idfs, filepath);
+    }
+
+    /**
+     * @return impact ordered index or null if it was not built
+     */
+    public ImpactOrderedIndex getImpactIndex() {
+        return impactIndex;
+    }
+
+    /**
+     * Evaluates the query score at a time, stopping after the budget of postings is spent.
+     * A segment is processed only whole, so the budget may be exceeded by the last segment.
+     *
+     * @param query  query words, separated by whitespace or punctuation
+     * @param k      number of documents to return
+     * @param budget maximum number of postings to process
+     * @return IDs and approximate scores of the best k documents found
+     */
+    public TopDocs searchImpactOrdered(String query, int k, long budget) {
+        return scoreAtATime(getTermIDs(query), k, budget);
+    }
+
+    /**
+     * Adds impacts of segments of all terms to accumulators from the highest impact to the lowest
+     */
+    private TopDocs scoreAtATime(int[] termIDs, int k, long budget) {
+        if (impactIndex == null) {
+            throw new IllegalStateException("Impact ordered index is not built");
+        }
+        ImpactOrderedIndex.SegmentIterator[] iterators = new ImpactOrderedIndex.SegmentIterator[termIDs.length];
+        int nSegments = 0;
+        for (int i = 0; i < termIDs.length; i++) {
+            iterators[i] = impactIndex.getSegments(termIDs[i]);
+            nSegments += iterators[i].size();
+        }
+        // impact in the high half, query term and number of its segment in the low half
+        long[] segments = new long[nSegments];
+        nSegments = 0;
+        for (int i = 0; i < termIDs.length; i++) {
+            for (int j = 0; j < iterators[i].size(); j++) {
+                segments[nSegments++] = ((long) iterators[i].getImpact(j) << 32) | ((long) i << 8) | j;
+            }
+        }
+        Arrays.sort(segments);
+        int[] accumulators = new int[nDocs];
+        int[] touched = new int[16];
+        int nTouched = 0;
+        long processed = 0;
+        for (int s = nSegments - 1; s >= 0 && processed < budget; s--) {
+            int impact = (int) (segments[s] >>> 32);
+            ImpactOrderedIndex.SegmentIterator itr = iterators[(int) segments[s] >>> 8];
+            int[] IDs = itr.getDocIDs((int) segments[s] & 0xFF);
+            for (int ID : IDs) {
+                if (accumulators[ID] == 0) {
+                    if (nTouched == touched.length) {
+                        touched = Arrays.copyOf(touched, nTouched * 2);
+                    }
+                    touched[nTouched++] = ID;
+                }
+                accumulators[ID] += impact;
+            }
+            processed += IDs.length;
+        }
+        TopDocs top = new TopDocs(k);
+        float unit = impactIndex.getImpactUnit();
+        for (int i = 0; i < nTouched; i++) {
+            top.offer(touched[i], accumulators[touched[i]] * unit);
+        }
+        return top;
+    }
+
+    /**
+     * Builds champion lists of terms, which are contained in at least minDocFrequency documents
+     *
+     * @param minDocFrequency minimum number of documents of a term, which gets a champion list
+     * @param r               number of documents in a champion list
+     */
+    public void buildChampionLists(int minDocFrequency, int r) {
+        championLists = new ChampionLists(postings, scorer, minDocFrequency, r);
+    }
+
+    /**
+     * @return champion lists or null if they were not built
+     */
+    public ChampionLists getChampionLists() {
+        return championLists;
+    }
+
+    /**
+     * Scores documents of champion lists and of full lists of terms, which do not have champion lists.
+     * Scores of the candidates are exact, full lists of common terms are only advanced to them with skips.
+     * If there are less than k candidates, the query is evaluated over full lists.
+     */
+    private TopDocs champions(int[] termIDs, int k) {
+        if (championLists == null) {
+            throw new IllegalStateException("Champion lists are not built");
+        }
+        int[][] lists = new int[termIDs.length][];
+        int nCandidates = 0;
+        for (int i = 0; i < termIDs.length; i++) {
+            lists[i] = championLists.getDocIDs(termIDs[i]);
+            if (lists[i] == null) {
+                lists[i] = postings.getPostingList(termIDs[i]);
+            }
+            nCandidates += lists[i].length;
+        }
+        int[] candidates = new int[nCandidates];
+        nCandidates = 0;
+        for (int[] list : lists) {
+            System.arraycopy(list, 0, candidates, nCandidates, list.length);
+            nCandidates += list.length;
+        }
+        Arrays.sort(candidates);
+        int size = 0;
+        for (int i = 0; i < nCandidates; i++) {
+            if (size == 0 || candidates[i] != candidates[size - 1]) {
+                candidates[size++] = candidates[i];
+            }
+        }
+        if (size < k) {
+            return search(termIDs, k, Mode.BLOCK_MAX_WAND);
+        }
+        CompressedIndex.PostingsIterator[] iterators = new CompressedIndex.PostingsIterator[termIDs.length];
+        float[] idfs = new float[termIDs.length];
+        for (int i = 0; i < termIDs.length; i++) {
+            iterators[i] = postings.getPostings(termIDs[i]);
+            idfs[i] = idf(termIDs[i]);
+        }
+        TopDocs top = new TopDocs(k);
+        for (int c = 0; c < size; c++) {
+            int docID = candidates[c];
+            float score = 0;
+            for (int i = 0; i < termIDs.length; i++) {
+                if (iterators[i].advance(docID) && iterators[i].getDocID() == docID) {
+                    score += scorer.score(idfs[i], iterators[i].getFrequency(), docID);
+                }
+            }
+            top.offer(docID, score);
+        }
+        return top;
+    }
+
+    /**
+     * Accumulates scores of all documents in an array, one posting list after another
+     */
+    private TopDocs termAtATime(int[] termIDs, int k) {
+        float[] scores = new float[nDocs];
+        for (int termID : termIDs) {
+            int[] IDs = postings.getPostingList(termID);
+            int[] tfs = postings.getFrequencies(termID);
+            float idf = idf(termID);
+            for (int i = 0; i < IDs.length; i++) {
+                scores[IDs[i]] += scorer.score(idf, tfs[i], IDs[i]);
+            }
+        }
+        TopDocs top = new TopDocs(k);
+        for (int ID = 0; ID < nDocs; ID++) {
+            if (scores[ID] > 0 && scores[ID] > top.threshold()) {
+                top.offer(ID, scores[ID]);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Evaluates documents in order of IDs with (Block-Max) WAND.
+     * Iterators are kept sorted by current document. The pivot is the first iterator,
+     * at which the sum of maximum scores of it and the previous iterators exceeds the threshold,
+     * documents before the pivot's document can not get into the best k, so the previous iterators skip to it.
+     * With block maximums, if the pivot's document can not get into the best k either,
+     * all iterators up to the pivot skip to the end of the nearest block.
+     */
+    private TopDocs wand(int[] termIDs, int k, boolean blockMax) {
+        int nTerms = termIDs.length;
+        CompressedIndex.PostingsIterator[] iterators = new CompressedIndex.PostingsIterator[nTerms];
+        float[] idfs = new float[nTerms];
+        float[] maxScores = new float[nTerms];
+        // terms in order of their current documents
+        int[] order = new int[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            iterators[i] = postings.getPostings(termIDs[i]);
+            iterators[i].nextDoc();
+            idfs[i] = idf(termIDs[i]);
+            maxScores[i] = idfs[i] * iterators[i].getMaxWeight();
+            order[i] = i;
+        }
+        TopDocs top = new TopDocs(k);
+        while (true) {
+            sortByDocID(order, iterators);
+            float threshold = top.threshold();
+            float bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < nTerms && iterators[order[i]].getDocID() != CompressedIndex.NO_MORE_DOCS; i++) {
+                bound += maxScores[order[i]];
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            int pivotID = iterators[order[pivot]].getDocID();
+            // other terms of the pivot's document
+            while (pivot + 1 < nTerms && iterators[order[pivot + 1]].getDocID() == pivotID) {
+                pivot++;
+            }
+            if (blockMax) {
+                float blockBound = 0;
+                for (int i = 0; i <= pivot; i++) {
+                    iterators[order[i]].advanceShallow(pivotID);
+                    blockBound += idfs[order[i]] * iterators[order[i]].getBlockMaxWeight();
+                }
+                if (blockBound <= threshold) {
+                    // documents before the end of the current blocks and before the next term's document
+                    // have the same bound
+                    int next = (pivot + 1 < nTerms) ? iterators[order[pivot + 1]].getDocID() : CompressedIndex.NO_MORE_DOCS;
+                    for (int i = 0; i <= pivot; i++) {
+                        int blockLastID = iterators[order[i]].getBlockLastDocID();
+                        if (blockLastID != CompressedIndex.NO_MORE_DOCS) {
+                            next = Math.min(next, blockLastID + 1);
+                        }
+                    }
+                    for (int i = 0; i <= pivot; i++) {
+                        iterators[order[i]].advance(next);
+                    }
+                    continue;
+                }
+            }
+            if (iterators[order[0]].getDocID() == pivotID) {
+                // scores are added in order of query terms, as in term-at-a-time evaluation
+                float score = 0;
+                for (int i = 0; i < nTerms; i++) {
+                    if (iterators[i].getDocID() == pivotID) {
+                        score += scorer.score(idfs[i], iterators[i].getFrequency(), pivotID);
+                    }
+                }
+                top.offer(pivotID, score);
+                for (int i = 0; i <= pivot; i++) {
+                    iterators[order[i]].nextDoc();
+                }
+            } else {
+                for (int i = 0; iterators[order[i]].getDocID() < pivotID; i++) {
+                    iterators[order[i]].advance(pivotID);
+                }
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Evaluates documents in order of IDs with MaxScore.
+     * Terms are sorted by maximum score, the longest prefix, which sum of maximum scores is not above
+     * the threshold, is non-essential. The next document is the smallest among essential iterators,
+     * non-essential iterators are advanced to it from the highest maximum score,
+     * until the score so far plus maximum scores of the rest can not exceed the threshold.
+     */
+    private TopDocs maxScore(int[] termIDs, int k) {
+        int nTerms = termIDs.length;
+        CompressedIndex.PostingsIterator[] iterators = new CompressedIndex.PostingsIterator[nTerms];
+        float[] idfs = new float[nTerms];
+        float[] maxScores = new float[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            iterators[i] = postings.getPostings(termIDs[i]);
+            iterators[i].nextDoc();
+            idfs[i] = idf(termIDs[i]);
+            maxScores[i] = idfs[i] * iterators[i].getMaxWeight();
+        }
+        // terms by maximum score in ascending order, insertion sort, because queries are short
+        int[] order = new int[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            int j = i - 1;
+            for (; j >= 0 && maxScores[order[j]] > maxScores[i]; j--) {
+                order[j + 1] = order[j];
+            }
+            order[j + 1] = i;
+        }
+        // sum of maximum scores of the first i + 1 terms of the order
+        float[] bounds = new float[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            bounds[i] = ((i == 0) ? 0 : bounds[i - 1]) + maxScores[order[i]];
+        }
+        // contribution of each term to the current document, if it contains the term
+        float[] scores = new float[nTerms];
+        boolean[] matched = new boolean[nTerms];
+        int firstEssential = 0;
+        TopDocs top = new TopDocs(k);
+        while (firstEssential < nTerms) {
+            int docID = CompressedIndex.NO_MORE_DOCS;
+            for (int i = firstEssential; i < nTerms; i++) {
+                docID = Math.min(docID, iterators[order[i]].getDocID());
+            }
+            if (docID == CompressedIndex.NO_MORE_DOCS) {
+                break;
+            }
+            float threshold = top.threshold();
+            float score = 0;
+            for (int i = firstEssential; i < nTerms; i++) {
+                int term = order[i];
+                matched[term] = iterators[term].getDocID() == docID;
+                if (matched[term]) {
+                    scores[term] = scorer.score(idfs[term], iterators[term].getFrequency(), docID);
+                    score += scores[term];
+                    iterators[term].nextDoc();
+                }
+            }
+            boolean isCandidate = true;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                int term = order[i];
+                matched[term] = false;
+                if (!isCandidate) {
+                    continue;
+                }
+                if (score + bounds[i] <= threshold) {
+                    isCandidate = false;
+                    continue;
+                }
+                if (iterators[term].advance(docID) && iterators[term].getDocID() == docID) {
+                    matched[term] = true;
+                    scores[term] = scorer.score(idfs[term], iterators[term].getFrequency(), docID);
+                    score += scores[term];
+                }
+            }
+            if (!isCandidate) {
+                continue;
+            }
+            // scores are added in order of query terms, as in term-at-a-time evaluation
+            score = 0;
+            for (int i = 0; i < nTerms; i++) {
+                if (matched[i]) {
+                    score += scores[i];
+                }
+            }
+            if (top.offer(docID, score)) {
+                threshold = top.threshold();
+                while (firstEssential < nTerms && bounds[firstEssential] <= threshold) {
+                    firstEssential++;
+                }
+            }
+        }
+        return top;
+    }
+
+    private float idf(int termID) {
+        return scorer.idf(dic.getPostings().getDocFrequency(termID));
+    }
+
+    /**
+     * Insertion sort, because only a few iterators move between calls
+     */
+    private static void sortByDocID(int[] order, CompressedIndex.PostingsIterator[] iterators) {
+        for (int i = 1; i < order.length; i++) {
+            int term = order[i];
+            int docID = iterators[term].getDocID();
+            int j = i - 1;
+            for (; j >= 0 && iterators[order[j]].getDocID() > docID; j--) {
+                order[j + 1] = order[j];
+            }
+            order[j + 1] = term;
+        }
+    }
+
+    /**
+     * @return IDs of query words, which are in the dictionary
+     */
+    private int[] getTermIDs(String query) {
+        String[] words = Tokenizer.tokenize(query);
+        int[] termIDs = new int[words.length];
+        int size = 0;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int termID = dic.getTermID(word.toLowerCase());
+            if (termID >= 0) {
+                termIDs[size++] = termID;
+            }
+        }
+        int[] res = new int[size];
+        System.arraycopy(termIDs, 0, res, 0, size);
+        return res;
+    }
+
+    public static void main(String[] args) {
+        LinkedList<File> filesList = Utils.listFilesFor(new File("files\\docs"));
+        File[] files = filesList.toArray(new File[filesList.size()]);
+        DictionarySPIMI dic = new DictionarySPIMI(files);
+        RankedRetrieval retrieval = new RankedRetrieval(dic);
+        retrieval.buildImpactIndex("files\\impactIndex.bin");
+        retrieval.buildChampionLists(dic.getnFiles() / 10, 100);
+        String[] queries = {
+                "Sherlock Holmes",
+                "the forecast for July",
+                "home"
+        };
+        for (String query : queries) {
+            for (Mode mode : Mode.values()) {
+                System.out.println(query + " (" + mode + "):");
+                TopDocs top = retrieval.search(query, 10, mode);
+                int[] IDs = top.getDocIDs();
+                float[] scores = top.getScores();
+                for (int i = 0; i < IDs.length; i++) {
+                    System.out.println("\t" + dic.getFile(IDs[i]).getName() + " " + scores[i]);
+                }
+            }
+            System.out.println(query + " (budget of 1000 postings):");
+            TopDocs top = retrieval.searchImpactOrdered(query, 10, 1000);
+            int[] IDs = top.getDocIDs();
+            float[] scores = top.getScores();
+            for (int i = 0; i < IDs.length; i++) {
+                System.out.println("\t" + dic.getFile(IDs[i]).getName() + " " + scores[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package main.retrieval;
+
+import main.LevenshteinAutomaton;
+import main.dictionary.DictionaryTrie;
+import main.indexes.KGramIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Finds words of the dictionary, which are similar to a (possibly misspelled) word.
+ * <p>
+ * Similar words are those within Levenshtein distance of 1 or 2. They are found by walking the trie
+ * with Levenshtein automaton, which skips every subtrie as soon as its prefix is too far from the word.
+ * Alternatively, candidates can be prefiltered by the share of common 3-grams (Jaccard coefficient)
+ * before their distance is checked.
+ * Corrections are ordered by distance, then by frequency of the word in the collection.
+ */
+public class SpellingCorrection {
+
+    public static final int MAX_DISTANCE = 2;
+
+    private DictionaryTrie dic;
+
+    public SpellingCorrection(DictionaryTrie dic) {
+        this.dic = dic;
+    }
+
+    /**
+     * Corrected word with its distance from the original one and frequency
+     */
+    private static class Correction implements Comparable<Correction> {
+        private int termID;
+        private int distance;
+        private int frequency;
+
+        private Correction(int termID, int distance, int frequency) {
+            this.termID = termID;
+            this.distance = distance;
+            this.frequency = frequency;
+        }
+
+        @Override
+        public int compareTo(Correction that) {
+            if (this.distance != that.distance) {
+                return this.distance - that.distance;
+            }
+            if (this.frequency != that.frequency) {
+                return (this.frequency > that.frequency) ? -1 : 1;
+            }
+            return this.termID - that.termID;
+        }
+    }
+
+    /**
+     * Returns the best correction of the word, if the word is not in the dictionary.
+     * Words within distance 1 are searched for first, and only if there are none, within distance 2.
+     *
+     * @param word word to correct
+     * @return the closest and the most frequent similar word,
+     * or null if the word is in the dictionary or there are no similar words
+     */
+    public String didYouMean(String word) {
+        // the dictionary keeps words in lowercase
+        word = word.toLowerCase();
+        if (dic.getTermID(word) >= 0) {
+            return null;
+        }
+        for (int distance = 1; distance <= MAX_DISTANCE; distance++) {
+            String[] corrections = getCorrections(word, distance);
+            if (corrections.length > 0) {
+                return corrections[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all words within Levenshtein distance from the word, using Levenshtein automaton over the trie.
+     * The word itself is not a correction, so it is not returned.
+     *
+     * @param word        word to find similar words for
+     * @param maxDistance maximum number of insertions, deletions and substitutions (at most 2)
+     * @return similar words, the closest and the most frequent first
+     */
+    public String[] getCorrections(String word, int maxDistance) {
+        checkDistance(maxDistance);
+        long[] found = dic.getSimilarTermIDs(word, maxDistance);
+        ArrayList<Correction> corrections = new ArrayList<Correction>(found.length);
+        for (long entry : found) {
+            int termID = (int) entry;
+            int distance = (int) (entry >>> 32);
+            if (distance > 0) {
+                corrections.add(new Correction(termID, distance, dic.getFrequency(termID)));
+            }
+        }
+        return toWords(corrections);
+    }
+
+    /**
+     * Returns words within Levenshtein distance from the word, which share enough 3-grams with it.
+     * Candidates with Jaccard coefficient of 3-gram sets below minJaccard are not checked at all.
+     * The word itself is not a correction, so it is not returned.
+     *
+     * @param word        word to find similar words for
+     * @param maxDistance maximum number of insertions, deletions and substitutions (at most 2)
+     * @param minJaccard  minimum share of common 3-grams among all 3-grams of both words, from 0 to 1
+     * @return similar words, the closest and the most frequent first
+     */
+    public String[] getCorrections(String word, int maxDistance, double minJaccard) {
+        checkDistance(maxDistance);
+        word = word.toLowerCase();
+        KGramIndex kGrams = dic.getKGramIndex();
+        String[] wordGrams = kGrams.getQueryGrams(word);
+        Arrays.sort(wordGrams);
+        int nWordGrams = 0;
+        for (int i = 0; i < wordGrams.length; i++) {
+            if (nWordGrams == 0 || !wordGrams[i].equals(wordGrams[nWordGrams - 1])) {
+                wordGrams[nWordGrams++] = wordGrams[i];
+            }
+        }
+
+        // collect IDs of all words having common 3-grams, every word once per common 3-gram
+        int[][] postings = new int[nWordGrams][];
+        int nPostings = 0;
+        for (int i = 0; i < nWordGrams; i++) {
+            postings[i] = kGrams.getTermIDs(wordGrams[i]);
+            nPostings += postings[i].length;
+        }
+        int[] termIDs = new int[nPostings];
+        int index = 0;
+        for (int i = 0; i < nWordGrams; i++) {
+            System.arraycopy(postings[i], 0, termIDs, index, postings[i].length);
+            index += postings[i].length;
+        }
+        Arrays.sort(termIDs);
+
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(word, maxDistance);
+        ArrayList<Correction> corrections = new ArrayList<Correction>();
+        for (int start = 0, end; start < nPostings; start = end) {
+            int termID = termIDs[start];
+            end = start + 1;
+            while (end < nPostings && termIDs[end] == termID) {
+                end++;
+            }
+            String term = dic.getTerm(termID);
+            if (Math.abs(term.length() - word.length()) > maxDistance) {
+                continue;
+            }
+            int nCommon = end - start;
+            // number of 3-grams of the term, some of them may repeat
+            int nTermGrams = Math.max(1, term.length() + 3 - kGrams.getK());
+            double jaccard = (double) nCommon / (nWordGrams + nTermGrams - nCommon);
+            if (jaccard < minJaccard) {
+                continue;
+            }
+            int distance = automaton.distance(term);
+            if (distance > 0) {
+                corrections.add(new Correction(termID, distance, dic.getFrequency(termID)));
+            }
+        }
+        return toWords(corrections);
+    }
+
+    private void checkDistance(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance should be from 0 to " + MAX_DISTANCE + ": " + maxDistance);
+        }
+    }
+
+    private String[] toWords(ArrayList<Correction> corrections) {
+        Collections.sort(corrections);
+        String[] words = new String[corrections.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = dic.getTerm(corrections.get(i).termID);
+        }
+        return words;
+    }
+
+    public static void main(String[] args) {
+        File[] files = {
+                new File("files\\docs\\0.txt"),
+                new File("files\\docs\\1.txt"),
+                new File("files\\docs\\2.txt"),
+                new File("files\\docs\\3.txt"),
+                new File("files\\docs\\4.txt"),
+                new File("files\\docs\\5.txt"),
+                new File("files\\docs\\6.txt"),
+                new File("files\\docs\\7.txt")
+        };
+        SpellingCorrection correction = new SpellingCorrection(new DictionaryTrie(files));
+
+        String[] words = {"sherlok", "hoimes", "elizabet", "scizophrenia"};
+        for (String word : words) {
+            System.out.println(word + ": did you mean " + correction.didYouMean(word) + "?");
+            System.out.println("  within 2: " + Arrays.toString(correction.getCorrections(word, 2)));
+            System.out.println("  within 2, 3-grams: " + Arrays.toString(correction.getCorrections(word, 2, 0.2)));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package main.retrieval;
+
+/**
+ * Collects k documents with the highest scores.
+ * <p>
+ * Documents are kept in a binary min-heap of parallel primitive arrays,
+ * so the smallest score among the best k, which a new document has to beat, is always at the root.
+ */
+public class TopDocs {
+
+    private int[] docIDs;
+    private float[] scores;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * @param k maximum number of documents to keep
+     */
+    public TopDocs(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of documents should be positive: " + k);
+        }
+        this.docIDs = new int[k];
+        this.scores = new float[k];
+        this.size = 0;
+    }
+
+    /**
+     * Adds the document, if it is among the best k so far
+     *
+     * @param docID id of the document
+     * @param score score of the document
+     * @return true if the document was added
+     */
+    public boolean offer(int docID, float score) {
+        if (sorted) {
+            throw new IllegalStateException("Documents were already sorted");
+        }
+        if (size < docIDs.length) {
+            docIDs[size] = docID;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (!isBetter(docID, score, docIDs[0], scores[0])) {
+            return false;
+        }
+        docIDs[0] = docID;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * @return the score a document has to exceed to be added, 0 while there are less than k documents
+     */
+    public float threshold() {
+        return (size < docIDs.length) ? 0 : scores[0];
+    }
+
+    public boolean isFull() {
+        return size == docIDs.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return IDs of the documents from the highest score to the lowest, documents can not be added after it
+     */
+    public int[] getDocIDs() {
+        sort();
+        int[] res = new int[size];
+        System.arraycopy(docIDs, 0, res, 0, size);
+        return res;
+    }
+
+    /**
+     * @return scores in the same order as {@link #getDocIDs()}
+     */
+    public float[] getScores() {
+        sort();
+        float[] res = new float[size];
+        System.arraycopy(scores, 0, res, 0, size);
+        return res;
+    }
+
+    /**
+     * Heap sort: the worst document is moved to the end, so the array ends up from the best to the worst
+     */
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    /**
+     * Higher score is better, of equal scores the smaller ID is better
+     */
+    private static boolean isBetter(int docID1, float score1, int docID2, float score2) {
+        return score1 > score2 || (score1 == score2 && docID1 < docID2);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBetter(docIDs[parent], scores[parent], docIDs[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int heapSize) {
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && isBetter(docIDs[child], scores[child], docIDs[child + 1], scores[child + 1])) {
+                child++;
+            }
+            if (!isBetter(docIDs[i], scores[i], docIDs[child], scores[child])) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int docID = docIDs[i];
+        docIDs[i] = docIDs[j];
+        docIDs[j] = docID;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -1,17 +1,39 @@
 package main.retrieval;
 
-import main.dictionary.Dictionary;
+import main.DoubleArrayTrie;
+import main.Utils;
 import main.dictionary.DictionaryTrie;
+import main.indexes.KGramIndex;
+import main.indexes.PermutermIndex;
 import main.indexes.PositionalIndex;
+import main.indexes.PostingsUnion;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
-
+import java.util.Arrays;
+
+/**
+ * Answers wildcard queries with any number of * over the words of DictionaryTrie.
+ * <p>
+ * Matching words are found with one of the plans, the cheapest by estimated number of words to look at
+ * (queries with a single * at the start or at the end go straight to the reversed trie or the trie):
+ * - 	trie: all words with the query's prefix, checked against the rest of the query;
+ * - 	reversed trie: the same for the query's postfix;
+ * - 	permuterm: words with both the prefix and the postfix (query X*Y is searched as Y$X),
+ * checked against the parts between them;
+ * - 	k-gram: intersection of postings of the query's k-grams, checked against the whole query.
+ * Then documents of all matching words are united.
+ */
 public class WildcardRetrieval {
 
+    private static final char WILDCARD = '*';
+    /** cost of checking a candidate word against the query compared to reading its ID */
+    private static final int VERIFICATION_COST = 4;
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    enum Plan {
+        TRIE, REVERSED_TRIE, PERMUTERM, K_GRAM
+    }
+
     private DictionaryTrie dic;
 
     WildcardRetrieval(DictionaryTrie dic) {
@@ -19,118 +41,137 @@ public class WildcardRetrieval {
     }
 
     public File[] query(String query) {
-        Iterable<String> words = null;
-        String[] subQueries = getSubQueries(query);
-        int nSubQueries = subQueries.length;
-
-        if (query.indexOf('*') == 0 && query.lastIndexOf("*") == query.length() - 1) {
-            words = filter(dic.getAllPrefixedWords(), subQueries);
-            return getFiles(words);
-        } else if (query.indexOf("*") == 0 && nSubQueries > 1) {
-            words = filter(dic.getPostfixedWords(subQueries[nSubQueries - 1]), subQueries);
-            return getFiles(words);
-        } else if (query.lastIndexOf("*") == (query.length() - 1) && nSubQueries > 1) {
-            words = filter(dic.getPrefixedWords(subQueries[0]), subQueries);
-            return getFiles(words);
-        }
-
-        switch (nSubQueries) {
-            case 0:
-                return dic.getFiles();
-            case 1:
-                if (query.indexOf('*') == 0) {
-                    // postfix tree
-                    words = dic.getPostfixedWords(subQueries[0]);
-                } else if (query.indexOf('*') == query.length() - 1) {
-                    // prefix tree
-                    words = dic.getPrefixedWords(subQueries[0]);
-                } else {
-                    // not a wildcard query
-                    return getFiles(dic.getPositionalIndex(subQueries[0]));
-                }
-                break;
-            case 2:
-                words = intersect(dic.getPrefixedWords(subQueries[0]), dic.getPostfixedWords(subQueries[1]));
-                break;
-            default:
-                words = intersect(dic.getPrefixedWords(subQueries[0]), dic.getPostfixedWords(subQueries[nSubQueries - 1]));
-                words = filter(words, subQueries);
-                break;
+        query = query.toLowerCase();
+        if (query.indexOf(WILDCARD) < 0) {
+            // not a wildcard query
+            PositionalIndex index = dic.getPositionalIndex(query);
+            return (index == null) ? new File[0] : getFiles(index);
+        }
+        if (containsOnlyWildcards(query)) {
+            return dic.getFiles();
         }
-        return getFiles(words);
+        return getFiles(getTermIDs(query));
     }
 
-    private String[] getSubQueries(String query) {
-        String[] input = query.split("\\*");
-        int len = input.length;
-        if (len > 0 && input[0].equals("")) {
-            String[] res = new String[len - 1];
-            System.arraycopy(input, 1, res, 0, len - 1);
-            return res;
-        } else {
-            return input;
+    /**
+     * Returns IDs of the words, which match wildcard query, using the cheapest plan
+     *
+     * @param query wildcard query with at least one *
+     * @return sorted term IDs
+     */
+    int[] getTermIDs(String query) {
+        int first = query.indexOf(WILDCARD);
+        int last = query.lastIndexOf(WILDCARD);
+        String prefix = query.substring(0, first);
+        String postfix = query.substring(last + 1);
+        switch (choosePlan(query, prefix, postfix, first != last)) {
+            case TRIE:
+                return getVerifiedTermIDs(dic.getPrefixedTermIDs(prefix), query, false);
+            case REVERSED_TRIE:
+                return getVerifiedTermIDs(dic.getPostfixedTermIDs(postfix), query, true);
+            case PERMUTERM:
+                return dic.getPermutermIndex().wildcardSearch(query);
+            default:
+                return dic.getKGramIndex().wildcardSearch(query);
         }
     }
 
-    private Iterable<String> filter(Iterable<String> words, String[] subQueries) {
-        ArrayList<String> result = new ArrayList<String>();
-        for (String word : words) {
-            boolean matches = true;
-            String wordCopy = new String(word);
-            for (String subQuery : subQueries) {
-                int pos = wordCopy.indexOf(subQuery);
-                if (pos < 0) {
-                    matches = false;
-                    break;
-                }
-                wordCopy = wordCopy.substring(pos + subQuery.length());
+    /**
+     * Estimates the number of operations for each plan and chooses the cheapest.
+     * A single * at the end or at the start leaves only the trie or the reversed trie,
+     * and without a prefix and a postfix only k-grams can narrow the search,
+     * so permuterm and k-gram indexes are built only for queries, for which they are candidates.
+     * Numbers of words with the prefix, the postfix or both are exact: the prefix is counted
+     * with binary searches over the sorted terms, the others in permuterm index;
+     * for k-grams, all postings have to be read.
+     */
+    Plan choosePlan(String query, String prefix, String postfix, boolean hasMiddle) {
+        if (!hasMiddle && postfix.isEmpty()) {
+            return Plan.TRIE;
+        }
+        if (!hasMiddle && prefix.isEmpty()) {
+            return Plan.REVERSED_TRIE;
+        }
+        if (prefix.isEmpty() && postfix.isEmpty()) {
+            return Plan.K_GRAM;
+        }
+        PermutermIndex permuterms = dic.getPermutermIndex();
+        long bestCost = Long.MAX_VALUE;
+        Plan best = Plan.K_GRAM;
+        if (!prefix.isEmpty()) {
+            long cost = (long) dic.countPrefixedTerms(prefix) * VERIFICATION_COST;
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = Plan.TRIE;
             }
-            if (matches) {
-                result.add(word);
+        }
+        if (!postfix.isEmpty()) {
+            long cost = (long) permuterms.count(postfix + PermutermIndex.END_OF_WORD) * VERIFICATION_COST;
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = Plan.REVERSED_TRIE;
             }
         }
-        return result;
+        long permutermCost = (long) permuterms.count(PermutermIndex.toPermuterm(query))
+                * (hasMiddle ? VERIFICATION_COST : 2);
+        if (permutermCost < bestCost) {
+            bestCost = permutermCost;
+            best = Plan.PERMUTERM;
+        }
+        KGramIndex kGrams = dic.getKGramIndex();
+        String[] queryGrams = kGrams.getQueryGrams(query);
+        if (queryGrams.length > 0) {
+            long cost = 0;
+            long minCount = Long.MAX_VALUE;
+            for (String gram : queryGrams) {
+                int count = kGrams.count(gram);
+                cost += count;
+                minCount = Math.min(minCount, count);
+            }
+            cost += minCount * VERIFICATION_COST;
+            if (cost < bestCost) {
+                best = Plan.K_GRAM;
+            }
+        }
+        return best;
     }
 
-    private Iterable<String> intersect(Iterable<String> list1, Iterable<String> list2) {
-        ArrayList<String> result = new ArrayList<String>();
-        Iterator<String> itr1 = list1.iterator();
-        Iterator<String> itr2 = list2.iterator();
-        String str1 = null, str2 = null;
-        if (itr1.hasNext() && itr2.hasNext()) {
-            str1 = itr1.next();
-            str2 = itr2.next();
-        }
-        while (true) {
-            int cmp = str1.compareTo(str2);
-            if (cmp == 0) {
-                result.add(str1);
-                // advance both iterators
-                if (itr1.hasNext() && itr2.hasNext()) {
-                    str1 = itr1.next();
-                    str2 = itr2.next();
-                } else {
-                    break;
-                }
-            } else if (cmp < 0) {
-                // advance first iterator
-                if (itr1.hasNext()) {
-                    str1 = itr1.next();
-                } else {
-                    break;
-                }
-            } else {
-                // advance second iterator
-                if (itr2.hasNext()) {
-                    str2 = itr2.next();
-                } else {
-                    break;
+    /**
+     * Reads term IDs from iterator and keeps those, which words match the query
+     *
+     * @param termIDs iterator over term IDs of candidate words
+     * @param query   wildcard query
+     * @param sort    true if IDs come out of order
+     * @return sorted IDs of matching words
+     */
+    private int[] getVerifiedTermIDs(DoubleArrayTrie.WordIterator termIDs, String query, boolean sort) {
+        int[] result = new int[INITIAL_ARRAY_SIZE];
+        int size = 0;
+        int termID;
+        while ((termID = termIDs.nextValue()) >= 0) {
+            if (Utils.matchesWildcard(dic.getTerm(termID), query)) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
                 }
+                result[size++] = termID;
             }
         }
+        result = Arrays.copyOf(result, size);
+        if (sort) {
+            Arrays.sort(result);
+        }
         return result;
     }
 
+    private static boolean containsOnlyWildcards(String query) {
+        for (int i = 0, len = query.length(); i < len; i++) {
+            if (query.charAt(i) != WILDCARD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private File[] getFiles(PositionalIndex index) {
         PositionalIndex.IDIterator idItr = index.idIterator();
         File[] files = new File[index.size()];
@@ -142,21 +183,15 @@ public class WildcardRetrieval {
         return files;
     }
 
-    private File[] getFiles(Iterable<String> words) {
-        Set<Integer> IDs = new TreeSet<Integer>();
-        // walk through all the words
-        for (String word : words) {
-            PositionalIndex index = dic.getPositionalIndex(word);
-            PositionalIndex.IDIterator idItr = index.idIterator();
-            // walk through the IDs of current word and add them to set
-            while (idItr.hasNext()) {
-                IDs.add(idItr.next());
-            }
+    private File[] getFiles(int[] termIDs) {
+        PositionalIndex[] indexes = new PositionalIndex[termIDs.length];
+        for (int i = 0; i < termIDs.length; i++) {
+            indexes[i] = dic.getPositionalIndex(termIDs[i]);
         }
-        File[] files = new File[IDs.size()];
-        int filesIndex = 0;
-        for (Integer ID : IDs) {
-            files[filesIndex++] = dic.getFile(ID);
+        int[] IDs = PostingsUnion.union(indexes, dic.getnFiles());
+        File[] files = new File[IDs.length];
+        for (int i = 0; i < IDs.length; i++) {
+            files[i] = dic.getFile(IDs[i]);
         }
         return files;
     }
@@ -185,7 +220,8 @@ public class WildcardRetrieval {
                 "*se",
                 "h*o*m*e",
                 "h*m*",
-                "sal*"
+                "sal*",
+                "*tion*ly"
         };
 
         for (int i = 0; i < queries.length; i++) {
@@ -0,0 +1,242 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Minimal perfect hash function over a fixed set of Strings,
+ * built using <b>hash and displace</b> (CHD) algorithm.
+ * Maps every String of the set to its index in the array the function was built from
+ * in O(1): one pass over the String's chars and two array lookups.
+ * <p>
+ * Keys are distributed in buckets of about 3 keys.
+ * Buckets are placed starting from the biggest ones: for every bucket a displacement is searched for,
+ * which maps all of its keys to free slots of a table with exactly as many slots as there are keys.
+ * Buckets with only one key take any free slot left, which is stored instead of displacement.
+ * <p>
+ * Strings, which are not in the set, are mapped to some index too,
+ * so the result should be verified against the key stored by that index.
+ */
+public class MinimalPerfectHash implements Serializable {
+
+    /** seed of the hash function, which made it possible to place all buckets */
+    private long seed;
+    private int nSlots;
+    /** displacement for each bucket, or -(slot + 1) for buckets with one key */
+    private int[] displacements;
+    /** index of the key in the original array for each slot */
+    private int[] indexes;
+
+    private static final int AVERAGE_BUCKET_SIZE = 3;
+    private static final int MAX_ATTEMPTS = 100;
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Builds the function over the keys
+     * @param keys distinct Strings
+     * @throws IllegalArgumentException if keys have duplicates
+     */
+    public MinimalPerfectHash(String[] keys) {
+        checkDistinct(keys);
+        this.nSlots = keys.length;
+        int nBuckets = Math.max(1, (nSlots + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE);
+        this.displacements = new int[nBuckets];
+        this.indexes = new int[nSlots];
+
+        long[] hashes1 = new long[nSlots];
+        long[] hashes2 = new long[nSlots];
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            this.seed = SEED_STEP * (attempt + 1);
+            for (int i = 0; i < nSlots; i++) {
+                hashes1[i] = hash(keys[i], seed);
+                hashes2[i] = mix(hashes1[i] ^ SEED_STEP);
+            }
+            if (place(hashes1, hashes2)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Could not build perfect hash function in " + MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Duplicates can never be placed in different slots, so without this check
+     * every attempt would try all displacements before giving up
+     * @throws IllegalArgumentException if keys have duplicates
+     */
+    private static void checkDistinct(String[] keys) {
+        String[] sorted = Arrays.copyOf(keys, keys.length);
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].equals(sorted[i - 1])) {
+                throw new IllegalArgumentException("Keys have duplicate: " + sorted[i]);
+            }
+        }
+    }
+
+    /**
+     * Tries to place all buckets using current seed
+     * @param hashes1 first hash of every key
+     * @param hashes2 second hash of every key
+     * @return true if all buckets were placed
+     */
+    private boolean place(long[] hashes1, long[] hashes2) {
+        int nBuckets = displacements.length;
+        // sort keys by buckets using counting sort
+        int[] bucketStarts = new int[nBuckets + 1];
+        for (int i = 0; i < nSlots; i++) {
+            bucketStarts[bucket(hashes1[i]) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < nBuckets; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1]);
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        int[] bucketKeys = new int[nSlots];
+        int[] filled = new int[nBuckets];
+        for (int i = 0; i < nSlots; i++) {
+            int b = bucket(hashes1[i]);
+            bucketKeys[bucketStarts[b] + filled[b]++] = i;
+        }
+
+        // sort buckets by size, the biggest first, also with counting sort
+        int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int b = 0; b < nBuckets; b++) {
+            sizeStarts[maxBucketSize - filled[b] + 1]++;
+        }
+        for (int s = 0; s <= maxBucketSize; s++) {
+            sizeStarts[s + 1] += sizeStarts[s];
+        }
+        int[] bucketOrder = new int[nBuckets];
+        for (int b = 0; b < nBuckets; b++) {
+            bucketOrder[sizeStarts[maxBucketSize - filled[b]]++] = b;
+        }
+
+        boolean[] taken = new boolean[nSlots];
+        int[] slots = new int[maxBucketSize];
+        // the smallest slot, which may be free (for buckets with one key)
+        int freeSlot = 0;
+        for (int b : bucketOrder) {
+            int start = bucketStarts[b];
+            int size = bucketStarts[b + 1] - start;
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                while (taken[freeSlot]) {
+                    freeSlot++;
+                }
+                taken[freeSlot] = true;
+                indexes[freeSlot] = bucketKeys[start];
+                displacements[b] = -(freeSlot + 1);
+                continue;
+            }
+            int displacement = findDisplacement(bucketKeys, start, size, hashes2, taken, slots);
+            if (displacement < 0) {
+                return false;
+            }
+            displacements[b] = displacement;
+            for (int i = 0; i < size; i++) {
+                taken[slots[i]] = true;
+                indexes[slots[i]] = bucketKeys[start + i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches for displacement, which maps all keys of the bucket to different free slots
+     * @param bucketKeys indexes of keys sorted by buckets
+     * @param start position of the bucket's first key in bucketKeys
+     * @param size number of keys in the bucket
+     * @param hashes2 second hash of every key
+     * @param taken which slots are already taken
+     * @param slots array to save slots of bucket's keys to
+     * @return displacement or -1 if it was not found
+     */
+    private int findDisplacement(int[] bucketKeys, int start, int size, long[] hashes2, boolean[] taken, int[] slots) {
+        for (int displacement = 0; displacement < Integer.MAX_VALUE; displacement++) {
+            boolean fits = true;
+            for (int i = 0; i < size && fits; i++) {
+                int slot = slot(hashes2[bucketKeys[start + i]], displacement);
+                if (taken[slot]) {
+                    fits = false;
+                }
+                for (int j = 0; j < i && fits; j++) {
+                    fits = slots[j] != slot;
+                }
+                slots[i] = slot;
+            }
+            if (fits) {
+                return displacement;
+            }
+            if ((long) displacement > (long) nSlots * nSlots) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index, which the key had in the array this function was built from.
+     * If the key was not in that array, returns some index, which should be verified.
+     * @param key String to get index for
+     * @return index of the key or -1 if the function is empty
+     */
+    public int get(String key) {
+        if (nSlots == 0) {
+            return -1;
+        }
+        long hash1 = hash(key, seed);
+        int displacement = displacements[bucket(hash1)];
+        if (displacement < 0) {
+            return indexes[-displacement - 1];
+        }
+        return indexes[slot(mix(hash1 ^ SEED_STEP), displacement)];
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return nSlots;
+    }
+
+    private int bucket(long hash1) {
+        return (int) ((hash1 >>> 1) % displacements.length);
+    }
+
+    /**
+     * Computes slot for the key as <code>(f1 + d0 * f2 + d1) mod nSlots</code>,
+     * where f1 and f2 are parts of the key's hash, and d0, d1 are parts of displacement
+     */
+    private int slot(long hash2, int displacement) {
+        long f1 = (hash2 >>> 33) % nSlots;
+        long f2 = (hash2 & 0x7FFFFFFFL) % nSlots;
+        long d0 = displacement % nSlots;
+        long d1 = displacement / nSlots;
+        return (int) ((f1 + d0 * f2 + d1) % nSlots);
+    }
+
+    /**
+     * 64-bit FNV-1a hash over the String's chars with additional mixing
+     */
+    private static long hash(String key, long seed) {
+        long hash = 0xCBF29CE484222325L ^ seed;
+        for (int i = 0, len = key.length(); i < len; i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreads bits of the hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}